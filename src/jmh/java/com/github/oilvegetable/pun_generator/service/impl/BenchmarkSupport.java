@@ -0,0 +1,50 @@
+package com.github.oilvegetable.pun_generator.service.impl;
+
+import com.github.oilvegetable.pun_generator.PunGeneratorApplication;
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 基准测试公共设施：固定输入语料与不带 Web 容器的 Spring 上下文
+ */
+final class BenchmarkSupport {
+
+    /**
+     * 固定输入语料，按 "字数_常见/生僻" 命名，作为各基准的 @Param
+     */
+    static final String INPUT_1_COMMON = "是";
+    static final String INPUT_1_RARE = "囧";
+    static final String INPUT_2_COMMON = "一世";
+    static final String INPUT_2_RARE = "窘迫";
+    static final String INPUT_4_COMMON = "一生一世";
+    static final String INPUT_4_RARE = "鬼斧神工";
+    static final String INPUT_8_COMMON = "一生一世只是一时";
+    static final String INPUT_8_RARE = "穷困潦倒囧途窘迫";
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * 启动不带 Web 容器的上下文，关闭结果缓存、索引快照与启动预热，保证每次都走完整计算路径，预热交给 JMH
+     */
+    static ConfigurableApplicationContext startContext(String... extraArgs) {
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--pun.cache-size=0",
+                "--pun.snapshot-path=",
+                "--pun.warmup-enabled=false",
+                "--logging.level.root=WARN"));
+        args.addAll(Arrays.asList(extraArgs));
+
+        SpringApplication app = new SpringApplication(PunGeneratorApplication.class);
+        app.setWebApplicationType(WebApplicationType.NONE);
+        app.setBannerMode(Banner.Mode.OFF);
+        app.setLogStartupInfo(false);
+        return app.run(args.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.oilvegetable.pun_generator.service.impl;
+
+import com.github.oilvegetable.pun_generator.service.SearchBudget;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 完整的 generatePun 路径：默认分类 / 全部分类 x 有序 / 无序
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class GeneratePunBenchmark {
+
+    @Param({
+            BenchmarkSupport.INPUT_1_COMMON, BenchmarkSupport.INPUT_1_RARE,
+            BenchmarkSupport.INPUT_2_COMMON, BenchmarkSupport.INPUT_2_RARE,
+            BenchmarkSupport.INPUT_4_COMMON, BenchmarkSupport.INPUT_4_RARE,
+            BenchmarkSupport.INPUT_8_COMMON, BenchmarkSupport.INPUT_8_RARE
+    })
+    public String input;
+
+    @Param({"DEFAULT", "ALL"})
+    public String typeSet;
+
+    @Param({"true", "false"})
+    public boolean ignoreOrder;
+
+    private ConfigurableApplicationContext context;
+    private PunServiceImpl service;
+    private List<String> types;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkSupport.startContext();
+        service = context.getBean(PunServiceImpl.class);
+        types = "ALL".equals(typeSet) ? service.getAllTypesOrdered() : service.getDefaultSelectedTypes();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Map<String, ?> generatePun() {
+        return service.generatePun(input, types, ignoreOrder, SearchBudget.unlimited());
+    }
+}
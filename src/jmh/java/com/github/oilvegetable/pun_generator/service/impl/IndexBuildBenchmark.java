@@ -0,0 +1,48 @@
+package com.github.oilvegetable.pun_generator.service.impl;
+
+import com.github.oilvegetable.pun_generator.config.PunProperties;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 索引构建：按加载方式分别对单个词库的解析与拼音转换计时
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class IndexBuildBenchmark {
+
+    @Param({"THUOCL", "JSON_XIEHOUYU", "JSON_NORMAL"})
+    public PunProperties.LoaderType loaderType;
+
+    private ConfigurableApplicationContext context;
+    private PunServiceImpl service;
+    private PunProperties.DictConfig dict;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkSupport.startContext();
+        service = context.getBean(PunServiceImpl.class);
+        dict = context.getBean(PunProperties.class).getGroups().stream()
+                .flatMap(group -> group.getDicts().stream())
+                .filter(d -> d.getLoaderType() == loaderType)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("未配置加载方式为 " + loaderType + " 的词库"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void loadDict(Blackhole bh) {
+        bh.consume(service.loadDict(dict));
+    }
+}
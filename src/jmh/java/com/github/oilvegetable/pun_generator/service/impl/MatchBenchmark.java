@@ -0,0 +1,86 @@
+package com.github.oilvegetable.pun_generator.service.impl;
+
+import com.github.oilvegetable.pun_generator.config.PunProperties;
+import com.github.oilvegetable.pun_generator.index.ItemStore;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 候选集筛选与有序 / 无序匹配，全部分类
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class MatchBenchmark {
+
+    @Param({
+            BenchmarkSupport.INPUT_1_COMMON, BenchmarkSupport.INPUT_1_RARE,
+            BenchmarkSupport.INPUT_2_COMMON, BenchmarkSupport.INPUT_2_RARE,
+            BenchmarkSupport.INPUT_4_COMMON, BenchmarkSupport.INPUT_4_RARE,
+            BenchmarkSupport.INPUT_8_COMMON, BenchmarkSupport.INPUT_8_RARE
+    })
+    public String input;
+
+    private ConfigurableApplicationContext context;
+    private PunServiceImpl service;
+    private PunIndex index;
+    private List<short[]> inputPinyins;
+    private long[][] inputMasks;
+    private long[][] fuzzyMasks;
+    private int minLimit;
+    private ItemStore store;
+    private long typeMask;
+    private int[] candidates;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkSupport.startContext();
+        service = context.getBean(PunServiceImpl.class);
+        PunProperties properties = context.getBean(PunProperties.class);
+
+        index = service.currentIndex();
+        store = index.getItemStore();
+        typeMask = store.typeMask(service.getAllTypesOrdered());
+        inputPinyins = service.getStringPinyins(input);
+        inputMasks = service.toMasks(index, inputPinyins);
+        fuzzyMasks = service.toFuzzyMasks(index, inputPinyins, inputMasks);
+        minLimit = Math.min(inputPinyins.size(), properties.getMinMatchCount());
+        candidates = service.collectCandidates(index, inputPinyins, typeMask, minLimit);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void pinyinConversion(Blackhole bh) {
+        bh.consume(service.getStringPinyins(input));
+    }
+
+    @Benchmark
+    public void candidateRetrieval(Blackhole bh) {
+        bh.consume(service.collectCandidates(index, inputPinyins, typeMask, minLimit));
+    }
+
+    @Benchmark
+    public void orderedMatch(Blackhole bh) {
+        for (int entry : candidates) {
+            bh.consume(service.calculateOrderedMatch(store, inputMasks, fuzzyMasks, entry, minLimit));
+        }
+    }
+
+    @Benchmark
+    public void unorderedMatch(Blackhole bh) {
+        for (int entry : candidates) {
+            bh.consume(service.calculateUnorderedMatch(store, inputMasks, fuzzyMasks, entry, minLimit));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.oilvegetable.pun_generator.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一轮压测的结果：吞吐、延迟分位数、响应大小与该轮期间的 GC 次数及耗时
+ */
+final class LoadReport {
+
+    private final int concurrency;
+    private final long elapsedNanos;
+    private final long[] latencies;
+    private final long[] sizes;
+    private final int errors;
+    private final int truncated;
+    // 收集器名 -> {次数, 耗时毫秒}
+    private final Map<String, long[]> gc;
+
+    LoadReport(int concurrency, long elapsedNanos, long[] latencies, long[] sizes, int errors, int truncated, Map<String, long[]> gc) {
+        this.concurrency = concurrency;
+        this.elapsedNanos = elapsedNanos;
+        this.latencies = latencies.clone();
+        this.sizes = sizes.clone();
+        this.errors = errors;
+        this.truncated = truncated;
+        this.gc = gc;
+        Arrays.sort(this.latencies);
+        Arrays.sort(this.sizes);
+    }
+
+    /**
+     * 各收集器累计的次数与耗时，前后两次快照相减即为一轮压测期间的 GC
+     */
+    static Map<String, long[]> gcSnapshot() {
+        Map<String, long[]> snapshot = new LinkedHashMap<>();
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            snapshot.put(bean.getName(), new long[]{bean.getCollectionCount(), bean.getCollectionTime()});
+        }
+        return snapshot;
+    }
+
+    static Map<String, long[]> gcDelta(Map<String, long[]> before, Map<String, long[]> after) {
+        Map<String, long[]> delta = new LinkedHashMap<>();
+        after.forEach((name, value) -> {
+            long[] base = before.getOrDefault(name, new long[2]);
+            delta.put(name, new long[]{value[0] - base[0], value[1] - base[1]});
+        });
+        return delta;
+    }
+
+    double throughput() {
+        return latencies.length / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * 延迟分位数 (毫秒)，取最近秩
+     */
+    double latencyMillis(double percentile) {
+        if (latencies.length == 0) return 0;
+        int rank = (int) Math.ceil(percentile * latencies.length);
+        return latencies[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    private long sizePercentile(double percentile) {
+        if (sizes.length == 0) return 0;
+        int rank = (int) Math.ceil(percentile * sizes.length);
+        return sizes[Math.max(0, rank - 1)];
+    }
+
+    private double sizeAverage() {
+        return sizes.length == 0 ? 0 : Arrays.stream(sizes).average().orElse(0);
+    }
+
+    String format() {
+        StringBuilder sb = new StringBuilder()
+                .append(String.format(Locale.ROOT, "请求数 %d (失败 %d, truncated %d), 并发 %d, 耗时 %.1fs, 吞吐 %.1f req/s%n",
+                        latencies.length, errors, truncated, concurrency, elapsedNanos / 1e9, throughput()))
+                .append(String.format(Locale.ROOT, "延迟 (ms): p50 %.2f, p95 %.2f, p99 %.2f, max %.2f%n",
+                        latencyMillis(0.50), latencyMillis(0.95), latencyMillis(0.99), latencyMillis(1.0)))
+                .append(String.format(Locale.ROOT, "响应大小 (bytes): 平均 %.0f, p95 %d, max %d%n",
+                        sizeAverage(), sizePercentile(0.95), sizePercentile(1.0)));
+        gc.forEach((name, value) -> sb.append(String.format(Locale.ROOT, "GC %s: %d 次, %dms%n", name, value[0], value[1])));
+        return sb.toString();
+    }
+
+    String toJson() {
+        StringBuilder gcJson = new StringBuilder();
+        gc.forEach((name, value) -> {
+            if (gcJson.length() > 0) gcJson.append(", ");
+            gcJson.append(String.format(Locale.ROOT, "\"%s\": {\"count\": %d, \"timeMs\": %d}", name, value[0], value[1]));
+        });
+        return String.format(Locale.ROOT, "{\"requests\": %d, \"errors\": %d, \"truncated\": %d, \"concurrency\": %d, \"elapsedMs\": %d, "
+                        + "\"throughput\": %.1f, \"latencyMs\": {\"p50\": %.3f, \"p95\": %.3f, \"p99\": %.3f, \"max\": %.3f}, "
+                        + "\"responseBytes\": {\"avg\": %.0f, \"p95\": %d, \"max\": %d}, \"gc\": {%s}}%n",
+                latencies.length, errors, truncated, concurrency, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                throughput(), latencyMillis(0.50), latencyMillis(0.95), latencyMillis(0.99), latencyMillis(1.0),
+                sizeAverage(), sizePercentile(0.95), sizePercentile(1.0), gcJson);
+    }
+}
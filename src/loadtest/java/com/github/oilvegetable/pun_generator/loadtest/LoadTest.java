@@ -0,0 +1,170 @@
+package com.github.oilvegetable.pun_generator.loadtest;
+
+import com.github.oilvegetable.pun_generator.PunGeneratorApplication;
+import com.github.oilvegetable.pun_generator.service.PunService;
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 宏观压测：进程内启动完整应用 (Web 容器、JSON 序列化与默认配置)，以固定并发请求 /pun/generate，
+ * 先预热再计量，报告吞吐、延迟分位数、响应大小与 GC。参数通过系统属性传入 (见 pom.xml 的 loadtest profile)：
+ * <ul>
+ *     <li>loadtest.concurrency: 并发请求数</li>
+ *     <li>loadtest.requests / loadtest.warmup: 计量与预热的请求数，查询不足时循环使用</li>
+ *     <li>loadtest.queries: 查询日志路径 (格式见 QuerySource.replay)，为空时按 Zipf 分布合成查询</li>
+ *     <li>loadtest.zipf / loadtest.seed: 合成查询的 Zipf 指数与随机种子</li>
+ *     <li>loadtest.report: 结果 JSON 的输出路径，为空则只打印</li>
+ * </ul>
+ * 命令行参数原样传给应用，如 --pun.cache-size=0
+ */
+public final class LoadTest {
+
+    // 单个请求的超时，超时计为失败
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final String TRUNCATED_HEADER = "X-Pun-Truncated";
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = Integer.getInteger("loadtest.concurrency", 16);
+        int requests = Integer.getInteger("loadtest.requests", 20000);
+        int warmup = Integer.getInteger("loadtest.warmup", 2000);
+        String queryLog = System.getProperty("loadtest.queries", "");
+        double zipf = Double.parseDouble(System.getProperty("loadtest.zipf", "1.1"));
+        long seed = Long.getLong("loadtest.seed", 42L);
+        String reportPath = System.getProperty("loadtest.report", "");
+
+        ConfigurableApplicationContext context = startApp(args);
+        try {
+            int port = Integer.parseInt(context.getEnvironment().getRequiredProperty("local.server.port"));
+            List<QuerySource.Query> queries = queryLog.isBlank()
+                    ? QuerySource.synthetic(warmup + requests, zipf, seed, context.getBean(PunService.class).getDefaultSelectedTypes())
+                    : QuerySource.replay(Paths.get(queryLog));
+            System.out.println("查询来源: " + (queryLog.isBlank() ? "Zipf(" + zipf + ") 合成" : queryLog) + ", 共 " + queries.size() + " 条");
+
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(REQUEST_TIMEOUT)
+                    .build();
+            String baseUrl = "http://localhost:" + port + "/pun/generate";
+
+            if (warmup > 0) {
+                System.out.println("预热 " + warmup + " 个请求...");
+                run(client, baseUrl, queries, 0, warmup, concurrency);
+            }
+            System.out.println("计量 " + requests + " 个请求, 并发 " + concurrency + "...");
+            LoadReport report = run(client, baseUrl, queries, warmup, requests, concurrency);
+
+            System.out.print(report.format());
+            if (!reportPath.isBlank()) {
+                Path path = Paths.get(reportPath);
+                if (path.getParent() != null) Files.createDirectories(path.getParent());
+                Files.writeString(path, report.toJson(), StandardCharsets.UTF_8);
+                System.out.println("结果已写入 " + path);
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * 启动完整的 Web 应用，监听随机端口
+     */
+    private static ConfigurableApplicationContext startApp(String[] extraArgs) {
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--server.port=0",
+                "--logging.level.root=WARN"));
+        args.addAll(Arrays.asList(extraArgs));
+
+        SpringApplication app = new SpringApplication(PunGeneratorApplication.class);
+        app.setBannerMode(Banner.Mode.OFF);
+        app.setLogStartupInfo(false);
+        return app.run(args.toArray(new String[0]));
+    }
+
+    /**
+     * 以 concurrency 个线程发送 count 个请求，第 i 个请求使用 queries[(offset + i) % size]
+     */
+    private static LoadReport run(HttpClient client, String baseUrl, List<QuerySource.Query> queries,
+                                  int offset, int count, int concurrency) throws Exception {
+        long[] latencies = new long[count];
+        long[] sizes = new long[count];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        AtomicInteger truncated = new AtomicInteger();
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread t = new Thread(r, "loadtest-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        Map<String, long[]> gcBefore = LoadReport.gcSnapshot();
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < concurrency; w++) {
+                futures.add(workers.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                        HttpRequest request = HttpRequest.newBuilder(toUri(baseUrl, queries.get((offset + i) % queries.size())))
+                                .timeout(REQUEST_TIMEOUT)
+                                .GET()
+                                .build();
+                        long begin = System.nanoTime();
+                        try {
+                            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                            latencies[i] = System.nanoTime() - begin;
+                            sizes[i] = response.body().length;
+                            if (response.statusCode() != 200) errors.incrementAndGet();
+                            if (response.headers().firstValue(TRUNCATED_HEADER).map(Boolean::parseBoolean).orElse(false)) {
+                                truncated.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            latencies[i] = System.nanoTime() - begin;
+                            errors.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+        return new LoadReport(concurrency, elapsed, latencies, sizes, errors.get(), truncated.get(),
+                LoadReport.gcDelta(gcBefore, LoadReport.gcSnapshot()));
+    }
+
+    private static URI toUri(String baseUrl, QuerySource.Query query) {
+        StringBuilder sb = new StringBuilder(baseUrl)
+                .append("?word=").append(URLEncoder.encode(query.word, StandardCharsets.UTF_8))
+                .append("&ignoreOrder=").append(query.ignoreOrder);
+        for (String type : query.types) {
+            sb.append("&types=").append(URLEncoder.encode(type, StandardCharsets.UTF_8));
+        }
+        return URI.create(sb.toString());
+    }
+}
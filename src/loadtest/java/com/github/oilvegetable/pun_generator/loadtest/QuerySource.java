@@ -0,0 +1,131 @@
+package com.github.oilvegetable.pun_generator.loadtest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 压测的查询序列：回放查询日志，或按 Zipf 分布从词库常用词中抽样
+ */
+final class QuerySource {
+
+    /**
+     * 合成查询的词池，按词频降序排名后抽样 (输入多为 2~4 字的常用词)
+     */
+    private static final String[] WORD_POOL_FILES = {
+            "thuocl/THUOCL_food.txt",
+            "thuocl/THUOCL_animal.txt",
+            "thuocl/THUOCL_caijing.txt",
+            "thuocl/THUOCL_chengyu.txt"
+    };
+    // 合成查询中指定全部分类、有序匹配的比例
+    private static final double ALL_TYPES_RATIO = 0.3;
+    private static final double ORDERED_RATIO = 0.3;
+
+    private QuerySource() {
+    }
+
+    /**
+     * 一次 /pun/generate 请求的参数，types 为空表示全部分类
+     */
+    static final class Query {
+        final String word;
+        final List<String> types;
+        final boolean ignoreOrder;
+
+        Query(String word, List<String> types, boolean ignoreOrder) {
+            this.word = word;
+            this.types = types;
+            this.ignoreOrder = ignoreOrder;
+        }
+    }
+
+    /**
+     * 读取查询日志，每行 "word<TAB>types<TAB>ignoreOrder"：types 以逗号分隔，为空表示全部分类；
+     * ignoreOrder 缺省为 true；空行与 # 开头的行忽略
+     */
+    static List<Query> replay(Path log) throws IOException {
+        List<Query> queries = new ArrayList<>();
+        for (String line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#")) continue;
+            String[] fields = line.split("\t", -1);
+            List<String> types = fields.length > 1 && !fields[1].isBlank()
+                    ? Arrays.asList(fields[1].trim().split("\\s*,\\s*"))
+                    : Collections.emptyList();
+            boolean ignoreOrder = fields.length <= 2 || fields[2].isBlank() || Boolean.parseBoolean(fields[2].trim());
+            queries.add(new Query(fields[0].trim(), types, ignoreOrder));
+        }
+        if (queries.isEmpty()) {
+            throw new IllegalArgumentException("查询日志为空: " + log);
+        }
+        return queries;
+    }
+
+    /**
+     * 合成查询：词按排名服从 Zipf 分布 (第 r 名的概率正比于 1 / r^exponent)，
+     * 部分查询指定全部分类或有序匹配，其余使用默认分类、无序匹配
+     */
+    static List<Query> synthetic(int count, double exponent, long seed, List<String> defaultTypes) throws IOException {
+        List<String> pool = loadWordPool();
+        double[] cumulative = new double[pool.size()];
+        double sum = 0;
+        for (int r = 0; r < pool.size(); r++) {
+            sum += 1.0 / Math.pow(r + 1, exponent);
+            cumulative[r] = sum;
+        }
+
+        Random random = new Random(seed);
+        List<Query> queries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            String word = pool.get(Math.min(rank < 0 ? -rank - 1 : rank, pool.size() - 1));
+            List<String> types = random.nextDouble() < ALL_TYPES_RATIO ? Collections.emptyList() : defaultTypes;
+            queries.add(new Query(word, types, random.nextDouble() >= ORDERED_RATIO));
+        }
+        return queries;
+    }
+
+    /**
+     * 词池文件每行 "词<TAB>词频"，各文件的词频量级不同，按文件内排名交错合并
+     */
+    private static List<String> loadWordPool() throws IOException {
+        List<List<String>> files = new ArrayList<>();
+        for (String file : WORD_POOL_FILES) {
+            List<String> words = new ArrayList<>();
+            try (InputStream in = QuerySource.class.getClassLoader().getResourceAsStream(file)) {
+                if (in == null) continue;
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String word = line.split("\t", 2)[0].trim();
+                    if (!word.isEmpty()) words.add(word);
+                }
+            }
+            files.add(words);
+        }
+        List<String> pool = new ArrayList<>();
+        for (int rank = 0; ; rank++) {
+            boolean any = false;
+            for (List<String> words : files) {
+                if (rank < words.size()) {
+                    pool.add(words.get(rank));
+                    any = true;
+                }
+            }
+            if (!any) break;
+        }
+        if (pool.isEmpty()) {
+            throw new IllegalStateException("未找到词池文件");
+        }
+        return pool;
+    }
+}
@@ -26,9 +26,107 @@ public class PunProperties {
     // 默认每次点击加载数量
     private int loadMoreStep = 40;
 
+    // 分页会话最大数量 (LRU 淘汰)
+    private int pageSessionSize = 200;
+
+    // 分页会话有效期 (秒)，过期后翻页会重新计算
+    private int pageSessionTtlSeconds = 600;
+
+    // 匹配结果缓存条数，<= 0 表示不缓存
+    private int cacheSize = 2000;
+
+    // 匹配结果缓存有效期 (秒)
+    private int cacheTtlSeconds = 1800;
+
+    // 单次查询匹配数超过该值时不缓存，控制缓存内存
+    private int cacheMaxMatches = 20000;
+
+    // 候选数 (或匹配数) 达到该值时并行细算与合并，短查询仍在请求线程内完成
+    private int parallelThreshold = 20000;
+
+    // 并行细算线程数，<= 0 表示使用 CPU 核数
+    private int scoreParallelism = 0;
+
+    // 慢查询阈值 (毫秒)，超过时打印输入、分类及各阶段耗时，<= 0 表示关闭
+    private long slowQueryThresholdMs = 500;
+
+    // 单次生成的时间预算 (毫秒)，超时后停止细算并返回部分结果 (truncated)；<= 0 表示不限。请求参数 timeoutMs 只能调小
+    private long searchTimeoutMs = 2000;
+
+    // 单次生成最多细算的候选数，超出时只细算命中输入位置最多的候选 (truncated)；<= 0 表示不限。请求参数 maxCandidates 只能调小
+    private int maxCandidates = 100000;
+
+    // 候选数达到该值的查询视为重查询，需取得许可才能细算
+    private int expensiveCandidates = 20000;
+
+    // 同时细算的重查询数，<= 0 表示使用 CPU 核数
+    private int maxExpensiveSearches = 0;
+
+    // 重查询等待许可的最长时间 (毫秒)，超时返回 429；不超过剩余的时间预算
+    private long expensiveQueueTimeoutMs = 500;
+
+    // 边输入边搜索的会话最大数量 (LRU 淘汰)
+    private int typeaheadSessionSize = 200;
+
+    // 边输入边搜索的会话闲置多久后失效 (秒)
+    private int typeaheadSessionTtlSeconds = 300;
+
+    // 整句扫描的最大输入长度
+    private int scanMaxLength = 500;
+
+    // 批量生成单次最多的输入数
+    private int batchMaxSize = 1000;
+
+    // 批量生成同时处理的输入数，<= 0 表示使用 CPU 核数
+    private int batchParallelism = 0;
+
     // 最低匹配字符数
     private int minMatchCount = 2;
 
+    // 模糊音规则，如 "z=zh"、"n=l"、"an=ang"、"in=ing"，建索引时生效；为空表示只按读音精确匹配
+    private List<String> fuzzyRules;
+
+    // 索引快照文件路径，为空则每次启动都解析词库；词库配置变化时快照自动失效并重建
+    private String snapshotPath;
+
+    // 词库加载方式：OFF 启动时加载全部词库；BACKGROUND 启动时只加载默认勾选的词库，其余在后台加载；
+    // ON_DEMAND 其余词库在首次有请求指定该分类时才加载。快照有效时直接加载全部，全部词库加载完成后才写快照
+    private LazyLoad lazyLoad = LazyLoad.OFF;
+
+    // 启动时并行加载词库的线程数，<= 0 表示使用 CPU 核数
+    private int loadParallelism = 0;
+
+    // 启动预热：索引构建完成后反复执行预热查询，直到吞吐稳定才报告就绪 (/actuator/health/readiness)
+    private boolean warmupEnabled = true;
+
+    // 预热查询，为空时使用内置的常见与生僻输入
+    private List<String> warmupQueries;
+
+    // 预热轮数的下限与上限，每轮执行全部预热查询 x 有序 / 无序
+    private int warmupMinRounds = 3;
+    private int warmupMaxRounds = 50;
+
+    // 相邻两轮的吞吐变化不超过该比例时视为稳定
+    private double warmupStableRatio = 0.05;
+
+    // 预热最长时间 (毫秒)，超出后不再等待稳定，直接就绪
+    private long warmupMaxMs = 60000;
+
+    // 词库监听目录，目录下文件变化时后台重新加载；为空则不监听
+    private String watchDir;
+
+    // 监听到变化后等待的毫秒数，期间的多次变化只触发一次重新加载
+    private long watchDelayMs = 2000;
+
+    // 分片部署：本实例只加载这些词库，为空表示加载全部。分片不读写索引快照
+    private List<String> shardDicts;
+
+    // 协调者：各分片的地址及其负责的词库。生成请求按分类并行转发给分片，未列出的词库由本实例计算 (也不加载列出的词库)
+    private List<ShardConfig> shards;
+
+    // 单个分片的超时 (毫秒)，不超过请求剩余的时间预算；超时或出错的分片对应分类返回空结果并标记 truncated
+    private long shardTimeoutMs = 1000;
+
     @Data
     public static class GroupConfig {
         private String name;
@@ -45,9 +143,23 @@ public class PunProperties {
         private int defaultFreq;
     }
 
+    @Data
+    public static class ShardConfig {
+        // 分片地址，如 http://localhost:8081
+        private String url;
+        // 该分片负责的词库名
+        private List<String> dicts;
+    }
+
     public enum LoaderType {
         JSON_NORMAL,
         JSON_XIEHOUYU,
         THUOCL
     }
+
+    public enum LazyLoad {
+        OFF,
+        BACKGROUND,
+        ON_DEMAND
+    }
 }
\ No newline at end of file
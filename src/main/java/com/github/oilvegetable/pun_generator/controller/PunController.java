@@ -2,24 +2,47 @@ package com.github.oilvegetable.pun_generator.controller;
 
 import com.github.oilvegetable.pun_generator.config.PunProperties;
 import com.github.oilvegetable.pun_generator.service.PunService;
+import com.github.oilvegetable.pun_generator.service.SearchBudget;
+import com.github.oilvegetable.pun_generator.service.impl.ShardCoordinator;
+import com.github.oilvegetable.pun_generator.vo.DictStatus;
+import com.github.oilvegetable.pun_generator.vo.PunBatchRequest;
+import com.github.oilvegetable.pun_generator.vo.PunPage;
 import com.github.oilvegetable.pun_generator.vo.PunResult;
+import com.github.oilvegetable.pun_generator.vo.TypeaheadPage;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 @RestController
 @RequestMapping("/pun")
 public class PunController {
 
+    // 流式生成的超时时间 (毫秒)
+    private static final long STREAM_TIMEOUT_MS = 60_000L;
+    // 结果超出预算、不完整时的响应头 (/generate 返回的是分类 -> 结果的 Map，无处放标记)
+    private static final String TRUNCATED_HEADER = "X-Pun-Truncated";
+
     @Autowired
     private PunService punService;
     @Autowired
     private PunProperties punProperties;
+    @Autowired
+    private ShardCoordinator shardCoordinator;
 
     // 获取分类菜单
     @GetMapping("/categories")
@@ -27,6 +50,12 @@ public class PunController {
         return punService.getCategoryMap();
     }
 
+    // 带 status 参数时返回每个词库的加载状态 (ready / loading / pending) 及词条数
+    @GetMapping(value = "/categories", params = "status")
+    public Map<String, List<DictStatus>> getCategoryStatus() {
+        return punService.getCategoryStatus();
+    }
+
     @GetMapping("/types-ordered")
     public List<String> getTypesOrdered() {
         return punService.getAllTypesOrdered();
@@ -46,13 +75,148 @@ public class PunController {
         );
     }
 
-    // 生成
+    // 后台重新加载词库，立即返回；构建完成前请求仍使用旧索引
+    @PostMapping("/admin/reload")
+    public Map<String, String> reload() {
+        return Map.of("status", punService.reload() ? "started" : "queued");
+    }
+
+    @GetMapping("/cache/stats")
+    public Map<String, Long> getCacheStats() {
+        return punService.getCacheStats();
+    }
+
+    // 生成；timeoutMs / maxCandidates 可收紧本次请求的预算，超出预算时返回部分结果并带 X-Pun-Truncated: true
+    // 配置了分片 (pun.shards) 时按分类转发给分片并合并，分片超时或出错同样返回部分结果
     @GetMapping("/generate")
-    public Map<String, List<PunResult>> generate(
+    public ResponseEntity<Map<String, List<PunResult>>> generate(
             @RequestParam String word,
             // 接收 List 保证顺序
             @RequestParam(required = false) List<String> types,
-            @RequestParam(required = false, defaultValue = "true") Boolean ignoreOrder) {
-        return punService.generatePun(word, types, ignoreOrder);
+            @RequestParam(required = false, defaultValue = "true") Boolean ignoreOrder,
+            @RequestParam(required = false) Long timeoutMs,
+            @RequestParam(required = false) Integer maxCandidates) {
+        SearchBudget budget = budget(timeoutMs, maxCandidates);
+        Map<String, List<PunResult>> results = shardCoordinator.isEnabled()
+                ? shardCoordinator.generatePun(word, types, ignoreOrder, budget)
+                : punService.generatePun(word, types, ignoreOrder, budget);
+        return ResponseEntity.ok()
+                .header(TRUNCATED_HEADER, String.valueOf(budget.isTruncated()))
+                .body(results);
+    }
+
+    // 批量生成：多个输入共用分类与顺序选项，结果按输入返回
+    @PostMapping("/generate/batch")
+    public Map<String, Map<String, List<PunResult>>> generateBatch(@RequestBody PunBatchRequest request) {
+        if (request.getWords() == null || request.getWords().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "words 不能为空");
+        }
+        if (request.getWords().size() > punProperties.getBatchMaxSize()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "单次最多 " + punProperties.getBatchMaxSize() + " 个输入");
+        }
+        rejectShardTypes(request.getTypes());
+        return punService.generatePunBatch(request.getWords(), request.getTypes(), request.isIgnoreOrder(), request.getLimit());
+    }
+
+    // 整句扫描：句中每一段与词条同音的位置，highlights 为该段在原句中的下标
+    @GetMapping("/scan")
+    public Map<String, List<PunResult>> scan(
+            @RequestParam String sentence,
+            @RequestParam(required = false) List<String> types) {
+        if (sentence.length() > punProperties.getScanMaxLength()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "输入最长 " + punProperties.getScanMaxLength() + " 个字");
+        }
+        rejectShardTypes(types);
+        return punService.scanSentence(sentence, types);
+    }
+
+    // 边输入边搜索：每次按键带上上一次返回的 session，只计算变化的末尾部分；每个分类返回前 limit 条 (默认为首页条数)
+    @GetMapping("/typeahead")
+    public TypeaheadPage typeahead(
+            @RequestParam(required = false, defaultValue = "") String word,
+            @RequestParam(required = false) String session,
+            @RequestParam(required = false) List<String> types,
+            @RequestParam(required = false, defaultValue = "true") Boolean ignoreOrder,
+            @RequestParam(required = false) Integer limit) {
+        rejectShardTypes(types);
+        int size = limit != null ? limit : punProperties.getInitialDisplaySize();
+        return punService.typeahead(session, word, types, ignoreOrder, size);
+    }
+
+    // 流式生成 (SSE)：每个分类算完即推送一个 page 事件 (单分类的 PunPage)，按 searchOrder 顺序，最后推送 done 事件
+    // 分片部署时本实例的分类照常逐个推送，分片的分类在该分片响应后推送 (不同实例之间按完成先后)
+    @GetMapping(value = "/generate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter generateStream(
+            @RequestParam String word,
+            @RequestParam(required = false) List<String> types,
+            @RequestParam(required = false, defaultValue = "true") Boolean ignoreOrder,
+            @RequestParam(required = false, defaultValue = "0") int limit,
+            @RequestParam(required = false) Long timeoutMs,
+            @RequestParam(required = false) Integer maxCandidates) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        Consumer<PunPage> onType = page -> {
+            try {
+                emitter.send(SseEmitter.event().name("page").data(page, MediaType.APPLICATION_JSON));
+            } catch (IOException e) {
+                // 客户端已断开，停止推送后续分类
+                throw new UncheckedIOException(e);
+            }
+        };
+        SearchBudget budget = budget(timeoutMs, maxCandidates);
+        (shardCoordinator.isEnabled()
+                ? shardCoordinator.generatePunStream(word, types, ignoreOrder, limit, budget, onType)
+                : punService.generatePunStream(word, types, ignoreOrder, limit, budget, onType)).whenComplete((v, e) -> {
+            if (e != null) {
+                emitter.completeWithError(e);
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event().name("done").data(""));
+                emitter.complete();
+            } catch (IOException ex) {
+                emitter.completeWithError(ex);
+            }
+        });
+        return emitter;
+    }
+
+    // 分页生成：带 limit 时返回每个分类的前 limit 条及下一页游标；分片部署时游标带分片序号，翻页转发给同一分片
+    @GetMapping(value = "/generate", params = "limit")
+    public PunPage generatePage(
+            @RequestParam String word,
+            @RequestParam(required = false) List<String> types,
+            @RequestParam(required = false, defaultValue = "true") Boolean ignoreOrder,
+            @RequestParam int limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Long timeoutMs,
+            @RequestParam(required = false) Integer maxCandidates) {
+        SearchBudget budget = budget(timeoutMs, maxCandidates);
+        return shardCoordinator.isEnabled()
+                ? shardCoordinator.generatePunPage(word, types, ignoreOrder, limit, cursor, budget)
+                : punService.generatePunPage(word, types, ignoreOrder, limit, cursor, budget);
+    }
+
+    /**
+     * 批量、整句扫描与边输入边搜索不经过分片，请求的分类 (为空表示全部分类) 包含分片负责的分类时直接拒绝，
+     * 避免这些分类静默返回空结果
+     */
+    private void rejectShardTypes(List<String> types) {
+        if (shardCoordinator.isEnabled() && shardCoordinator.touchesShards(types)) {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, "分片部署下该接口不支持分片负责的分类，请通过 types 指定本地分类");
+        }
+    }
+
+    /**
+     * 本次请求的预算：默认取配置，请求参数只能收紧 (配置为不限时可任意指定)，避免客户端绕过保护
+     */
+    private SearchBudget budget(Long timeoutMs, Integer maxCandidates) {
+        return SearchBudget.of(
+                tighten(punProperties.getSearchTimeoutMs(), timeoutMs),
+                (int) tighten(punProperties.getMaxCandidates(), maxCandidates == null ? null : maxCandidates.longValue()));
+    }
+
+    private static long tighten(long configured, Long requested) {
+        if (requested == null || requested <= 0) return configured;
+        return configured > 0 ? Math.min(configured, requested) : requested;
     }
 }
\ No newline at end of file
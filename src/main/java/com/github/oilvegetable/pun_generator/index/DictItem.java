@@ -0,0 +1,18 @@
+package com.github.oilvegetable.pun_generator.index;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 词条
+ */
+@Data
+@AllArgsConstructor
+public class DictItem {
+    private String text;
+    private String type;
+    private String extra;
+    private int frequency;
+    // 每个字的读音音节 ID (已排序)
+    private short[][] pinyins;
+}
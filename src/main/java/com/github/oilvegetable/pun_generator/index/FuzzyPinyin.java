@@ -0,0 +1,173 @@
+package com.github.oilvegetable.pun_generator.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 模糊音：按规则将音节归为等价类 (如 z=zh、n=l、an=ang、in=ing)。
+ * 建索引时倒排表按等价类 ID 组织，模糊查询读取的倒排表数量与精确查询相同；
+ * 未配置规则时每个音节自成一类，等价类 ID 即音节 ID。
+ * <p>
+ * 规则两侧均为声母时按声母替换，否则按韵母结尾替换 (an=ang 同时作用于 ian/iang、uan/uang)。
+ */
+public final class FuzzyPinyin {
+
+    // 先匹配双字母声母
+    private static final List<String> INITIALS = List.of(
+            "zh", "ch", "sh", "b", "p", "m", "f", "d", "t", "n", "l", "g", "k", "h", "j", "q", "x", "r", "z", "c", "s", "y", "w");
+
+    private final boolean enabled;
+    // 音节 ID -> 等价类 ID
+    private final short[] classOf;
+    private final int classCount;
+    // 等价类 ID -> 该类全部音节的位图
+    private final long[][] classMasks;
+
+    private FuzzyPinyin(boolean enabled, short[] classOf, int classCount, long[][] classMasks) {
+        this.enabled = enabled;
+        this.classOf = classOf;
+        this.classCount = classCount;
+        this.classMasks = classMasks;
+    }
+
+    /**
+     * @param rules 形如 "z=zh" 的规则，格式不正确的规则忽略
+     */
+    public static FuzzyPinyin of(SyllableTable syllableTable, List<String> rules) {
+        List<String> syllables = syllableTable.getSyllables();
+        Map<String, String> initialRoot = new HashMap<>();
+        // 韵母结尾：较长的一侧 -> 较短的一侧
+        Map<String, String> finalSuffix = new LinkedHashMap<>();
+        if (rules != null) {
+            for (String rule : rules) {
+                String[] parts = rule == null ? new String[0] : rule.trim().split("\\s*=\\s*");
+                if (parts.length != 2 || parts[0].isEmpty() || parts[1].isEmpty() || parts[0].equals(parts[1])) {
+                    System.err.println("忽略无效的模糊音规则: " + rule);
+                    continue;
+                }
+                if (INITIALS.contains(parts[0]) && INITIALS.contains(parts[1])) {
+                    union(initialRoot, parts[0], parts[1]);
+                } else if (parts[0].length() >= parts[1].length()) {
+                    finalSuffix.put(parts[0], parts[1]);
+                } else {
+                    finalSuffix.put(parts[1], parts[0]);
+                }
+            }
+        }
+
+        boolean enabled = !initialRoot.isEmpty() || !finalSuffix.isEmpty();
+        short[] classOf = new short[syllables.size()];
+        Map<String, Integer> classIds = new HashMap<>();
+        List<List<Integer>> members = new ArrayList<>();
+        for (int id = 0; id < syllables.size(); id++) {
+            String key = enabled ? canonical(syllables.get(id), initialRoot, finalSuffix) : syllables.get(id);
+            int classId = classIds.computeIfAbsent(key, k -> {
+                members.add(new ArrayList<>());
+                return members.size() - 1;
+            });
+            classOf[id] = (short) classId;
+            members.get(classId).add(id);
+        }
+
+        long[][] classMasks = new long[members.size()][];
+        for (int c = 0; c < classMasks.length; c++) {
+            long[] mask = new long[syllableTable.maskWords()];
+            for (int id : members.get(c)) {
+                mask[id >>> 6] |= 1L << id;
+            }
+            classMasks[c] = mask;
+        }
+        return new FuzzyPinyin(enabled, classOf, members.size(), classMasks);
+    }
+
+    private static void union(Map<String, String> root, String a, String b) {
+        String ra = find(root, a);
+        String rb = find(root, b);
+        if (!ra.equals(rb)) {
+            // 以较短 (字母序较小) 的一侧为代表，结果与规则顺序无关
+            if (ra.length() < rb.length() || (ra.length() == rb.length() && ra.compareTo(rb) < 0)) {
+                root.put(rb, ra);
+            } else {
+                root.put(ra, rb);
+            }
+        }
+    }
+
+    private static String find(Map<String, String> root, String s) {
+        String parent = root.get(s);
+        return parent == null ? s : find(root, parent);
+    }
+
+    private static String canonical(String syllable, Map<String, String> initialRoot, Map<String, String> finalSuffix) {
+        String initial = "";
+        for (String candidate : INITIALS) {
+            if (syllable.startsWith(candidate) && syllable.length() > candidate.length()) {
+                initial = candidate;
+                break;
+            }
+        }
+        String fin = syllable.substring(initial.length());
+        for (Map.Entry<String, String> rule : finalSuffix.entrySet()) {
+            if (fin.endsWith(rule.getKey())) {
+                fin = fin.substring(0, fin.length() - rule.getKey().length()) + rule.getValue();
+                break;
+            }
+        }
+        return find(initialRoot, initial) + "|" + fin;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * 一个字的读音 (音节 ID) 转为等价类 ID (升序去重)；未启用时原样返回
+     */
+    public short[] toClasses(short[] ids) {
+        if (!enabled) return ids;
+        short[] classes = new short[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            classes[i] = classOf[ids[i]];
+        }
+        Arrays.sort(classes);
+        int n = 0;
+        for (int i = 0; i < classes.length; i++) {
+            if (n == 0 || classes[i] != classes[n - 1]) {
+                classes[n++] = classes[i];
+            }
+        }
+        return n == classes.length ? classes : Arrays.copyOf(classes, n);
+    }
+
+    public short[][] toClasses(short[][] pinyins) {
+        if (!enabled) return pinyins;
+        short[][] classes = new short[pinyins.length][];
+        for (int i = 0; i < pinyins.length; i++) {
+            classes[i] = toClasses(pinyins[i]);
+        }
+        return classes;
+    }
+
+    /**
+     * 输入字的模糊位图：包含其读音所在等价类的全部音节；未启用时返回精确位图本身
+     */
+    public long[] toFuzzyMask(short[] ids, long[] exactMask) {
+        if (!enabled) return exactMask;
+        long[] mask = exactMask.clone();
+        for (short id : ids) {
+            long[] classMask = classMasks[classOf[id]];
+            for (int w = 0; w < mask.length; w++) {
+                mask[w] |= classMask[w];
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,296 @@
+package com.github.oilvegetable.pun_generator.index;
+
+import com.github.oilvegetable.pun_generator.config.PunProperties;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.zip.CRC32;
+
+/**
+ * 索引二进制快照：首次启动构建索引后写入，之后启动通过 FileChannel.map 直接加载，跳过词库解析与拼音转换。
+ * <p>
+ * 格式 (大端)：
+ * <pre>
+ * int magic, int version, long configChecksum
+ * int syllableCount, [str syllable]...
+ * int typeCount, [str type]...
+ * chars textArena, ints textOffsets, ints charOffsets, ints readingOffsets, shorts syllableArena
+ * ints memberEntries, shorts memberTypes, ints memberFrequencies, int extraCount, [int member, str extra]...
+ * int offsetsLength, int[] offsets, int postingsLength, int[] postings (按模糊音等价类 ID 组织)
+ * ints edgeStart, shorts edgeSymbols, ints edgeChildren, ints fail, ints outputLink, ints outputStart, ints outputs, shorts depths
+ * int endMagic
+ * </pre>
+ * str 为 int 字节长度 + UTF-8 字节；chars / ints / shorts 为 int 长度 + 原始数组。
+ * 词条部分即 {@link ItemStore} 的各列，加载时整块读入，不再逐条创建对象；
+ * 整句扫描的 {@link PhraseAutomaton} 构建较慢 (求失配链)，同样整块存入。
+ */
+@Getter
+@AllArgsConstructor
+public class IndexSnapshot {
+
+    private static final int MAGIC = 0x50554E58;     // "PUNX"
+    private static final int END_MAGIC = 0x58454E44; // "XEND"
+    // 格式变化时递增，旧快照会被视为过期
+    private static final int VERSION = 3;
+
+    private final SyllableTable syllableTable;
+    private final ItemStore itemStore;
+    private final PostingIndex postingIndex;
+    private final PhraseAutomaton phraseAutomaton;
+
+    /**
+     * 计算词库配置与词库文件的校验和，配置变化 (增删词库、路径、加载方式等) 或词库文件更新时快照失效
+     */
+    public static long checksum(PunProperties properties) {
+        StringBuilder sb = new StringBuilder().append(VERSION);
+        if (properties.getGroups() != null) {
+            for (PunProperties.GroupConfig group : properties.getGroups()) {
+                if (group.getDicts() == null) continue;
+                for (PunProperties.DictConfig dict : group.getDicts()) {
+                    sb.append('|').append(dict.getName())
+                            .append('|').append(dict.getPath())
+                            .append('|').append(dict.getLoaderType())
+                            .append('|').append(dict.getKeyField())
+                            .append('|').append(dict.getExtraField())
+                            .append('|').append(dict.getDefaultFreq())
+                            .append('|').append(resourceStamp(dict.getPath()));
+                }
+            }
+        }
+        // 倒排表以模糊音等价类为键，规则变化时快照同样失效
+        sb.append("|fuzzy:").append(properties.getFuzzyRules());
+        CRC32 crc = new CRC32();
+        crc.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /**
+     * 词库文件的大小与修改时间 (先按类路径查找，再按文件路径)，不存在时为 missing；
+     * 不读取内容，启动时不必为了校验而把词库多读一遍
+     */
+    private static String resourceStamp(String path) {
+        try {
+            URL url = IndexSnapshot.class.getClassLoader().getResource(path);
+            if (url == null || "file".equals(url.getProtocol())) {
+                Path file = url == null ? Paths.get(path) : Paths.get(url.toURI());
+                if (!Files.isRegularFile(file)) return "missing";
+                return Files.size(file) + "@" + Files.getLastModifiedTime(file).toMillis();
+            }
+            // 打包在 jar 中：取条目信息，不打开条目的输入流
+            URLConnection connection = url.openConnection();
+            if (connection instanceof JarURLConnection jar) {
+                JarEntry entry = jar.getJarEntry();
+                return entry.getSize() + "@" + entry.getTime();
+            }
+            return connection.getContentLengthLong() + "@" + connection.getLastModified();
+        } catch (IOException | URISyntaxException | InvalidPathException e) {
+            return "unknown";
+        }
+    }
+
+    /**
+     * 写入快照，先写临时文件再原子替换，避免并发启动读到半个文件
+     */
+    public void write(Path path, long configChecksum) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(configChecksum);
+
+                List<String> syllables = syllableTable.getSyllables();
+                out.writeInt(syllables.size());
+                for (String syllable : syllables) {
+                    writeStr(out, syllable);
+                }
+
+                List<String> types = itemStore.getTypes();
+                out.writeInt(types.size());
+                for (String type : types) {
+                    writeStr(out, type);
+                }
+
+                out.writeInt(itemStore.textArena().length);
+                for (char c : itemStore.textArena()) {
+                    out.writeChar(c);
+                }
+                writeInts(out, itemStore.textOffsets());
+                writeInts(out, itemStore.charOffsets());
+                writeInts(out, itemStore.readingOffsets());
+                writeShorts(out, itemStore.syllableArena());
+
+                writeInts(out, itemStore.memberEntries());
+                writeShorts(out, itemStore.memberTypes());
+                writeInts(out, itemStore.memberFrequencies());
+                // 附加信息只有歇后语等少数词条有，按 (member, extra) 稀疏存储
+                String[] extras = itemStore.memberExtras();
+                int extraCount = 0;
+                for (String extra : extras) {
+                    if (extra != null && !extra.isEmpty()) extraCount++;
+                }
+                out.writeInt(extraCount);
+                for (int m = 0; m < extras.length; m++) {
+                    if (extras[m] != null && !extras[m].isEmpty()) {
+                        out.writeInt(m);
+                        writeStr(out, extras[m]);
+                    }
+                }
+
+                writeInts(out, postingIndex.offsets());
+                writeInts(out, postingIndex.postings());
+
+                writeInts(out, phraseAutomaton.edgeStart());
+                writeShorts(out, phraseAutomaton.edgeSymbols());
+                writeInts(out, phraseAutomaton.edgeChildren());
+                writeInts(out, phraseAutomaton.fail());
+                writeInts(out, phraseAutomaton.outputLink());
+                writeInts(out, phraseAutomaton.outputStart());
+                writeInts(out, phraseAutomaton.outputs());
+                writeShorts(out, phraseAutomaton.depths());
+                out.writeInt(END_MAGIC);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 通过内存映射读取快照
+     *
+     * @return 快照不存在、版本或配置校验和不一致时返回 null，调用方应重新构建
+     * @throws IOException 文件损坏或读取失败
+     */
+    public static IndexSnapshot read(Path path, long configChecksum) throws IOException {
+        if (!Files.isRegularFile(path)) return null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION || buf.getLong() != configChecksum) {
+                return null;
+            }
+
+            int syllableCount = buf.getInt();
+            List<String> syllables = new ArrayList<>(syllableCount);
+            for (int i = 0; i < syllableCount; i++) {
+                syllables.add(readStr(buf).intern());
+            }
+
+            int typeCount = buf.getInt();
+            List<String> types = new ArrayList<>(typeCount);
+            for (int i = 0; i < typeCount; i++) {
+                types.add(readStr(buf));
+            }
+
+            char[] textArena = new char[buf.getInt()];
+            buf.asCharBuffer().get(textArena);
+            buf.position(buf.position() + textArena.length * Character.BYTES);
+            int[] textOffsets = readInts(buf);
+            int[] charOffsets = readInts(buf);
+            int[] readingOffsets = readInts(buf);
+            short[] syllableArena = readShorts(buf);
+
+            int[] memberEntries = readInts(buf);
+            short[] memberTypes = readShorts(buf);
+            int[] memberFrequencies = readInts(buf);
+            String[] memberExtras = new String[memberEntries.length];
+            int extraCount = buf.getInt();
+            for (int i = 0; i < extraCount; i++) {
+                int member = buf.getInt();
+                memberExtras[member] = readStr(buf);
+            }
+
+            int[] offsets = readInts(buf);
+            int[] postings = readInts(buf);
+
+            int[] edgeStart = readInts(buf);
+            short[] edgeSymbols = readShorts(buf);
+            int[] edgeChildren = readInts(buf);
+            int[] fail = readInts(buf);
+            int[] outputLink = readInts(buf);
+            int[] outputStart = readInts(buf);
+            int[] outputs = readInts(buf);
+            short[] depths = readShorts(buf);
+            if (buf.getInt() != END_MAGIC || offsets.length == 0 || offsets.length > syllableCount + 1
+                    || textOffsets.length != charOffsets.length || memberTypes.length != memberEntries.length
+                    || edgeStart.length != fail.length + 1 || outputStart.length != fail.length + 1
+                    || outputLink.length != fail.length || depths.length != fail.length || edgeSymbols.length != edgeChildren.length) {
+                throw new IOException("索引快照已损坏: " + path);
+            }
+            ItemStore itemStore = new ItemStore(types, textArena, textOffsets, charOffsets, readingOffsets, syllableArena,
+                    memberEntries, memberTypes, memberFrequencies, memberExtras);
+            return new IndexSnapshot(new SyllableTable(syllables), itemStore,
+                    new PostingIndex(itemStore.getEntryCount(), offsets, postings),
+                    new PhraseAutomaton(edgeStart, edgeSymbols, edgeChildren, fail, outputLink, outputStart, outputs, depths));
+        } catch (RuntimeException e) {
+            // BufferUnderflowException / IndexOutOfBounds 等，说明文件被截断
+            throw new IOException("索引快照已损坏: " + path, e);
+        }
+    }
+
+    private static void writeStr(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = (str == null ? "" : str).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readStr(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int v : values) {
+            out.writeInt(v);
+        }
+    }
+
+    private static void writeShorts(DataOutputStream out, short[] values) throws IOException {
+        out.writeInt(values.length);
+        for (short v : values) {
+            out.writeShort(v);
+        }
+    }
+
+    private static short[] readShorts(ByteBuffer buf) {
+        short[] values = new short[buf.getInt()];
+        buf.asShortBuffer().get(values);
+        buf.position(buf.position() + values.length * Short.BYTES);
+        return values;
+    }
+
+    private static int[] readInts(ByteBuffer buf) {
+        int[] values = new int[buf.getInt()];
+        buf.asIntBuffer().get(values);
+        buf.position(buf.position() + values.length * Integer.BYTES);
+        return values;
+    }
+}
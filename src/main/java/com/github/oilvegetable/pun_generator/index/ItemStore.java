@@ -0,0 +1,355 @@
+package com.github.oilvegetable.pun_generator.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 列式词条存储：同一文本出现在多个词库中时只存一份。
+ * <p>
+ * 词条 (entry) 按文本去重，文本与每个字的读音存放在扁平数组中；
+ * 词条在各词库中的每次出现 (member) 单独记录分类、词频与附加信息，member ID 即原始加载顺序。
+ * 每个词条另有一个分类位图，按分类筛选时只需与所选分类的位图做一次与运算。
+ */
+public final class ItemStore {
+
+    // 分类位图为 long，最多 64 个分类
+    public static final int MAX_TYPES = Long.SIZE;
+
+    private final List<String> types;
+    // 词条 e 的文本为 textArena[textOffsets[e] .. textOffsets[e + 1])
+    private final char[] textArena;
+    private final int[] textOffsets;
+    // 词条 e 的第 k 个字是全局第 charOffsets[e] + k 个字，
+    // 全局第 c 个字的读音为 syllableArena[readingOffsets[c] .. readingOffsets[c + 1]) (已排序)
+    private final int[] charOffsets;
+    private final int[] readingOffsets;
+    private final short[] syllableArena;
+    // 出现记录，按加载顺序
+    private final int[] memberEntries;
+    private final short[] memberTypes;
+    private final int[] memberFrequencies;
+    private final String[] memberExtras;
+
+    // 以下由上面的数组推导，不写入快照
+    private final long[] typeMasks;
+    private final int[] typeMemberCounts;
+    // 词条 e 的出现记录为 entryMembers[entryMemberOffsets[e] .. entryMemberOffsets[e + 1]) (升序)
+    private final int[] entryMemberOffsets;
+    private final int[] entryMembers;
+
+    ItemStore(List<String> types, char[] textArena, int[] textOffsets, int[] charOffsets, int[] readingOffsets, short[] syllableArena,
+              int[] memberEntries, short[] memberTypes, int[] memberFrequencies, String[] memberExtras) {
+        if (types.size() > MAX_TYPES) {
+            throw new IllegalStateException("分类数超过 " + MAX_TYPES + " 个: " + types.size());
+        }
+        this.types = Collections.unmodifiableList(new ArrayList<>(types));
+        this.textArena = textArena;
+        this.textOffsets = textOffsets;
+        this.charOffsets = charOffsets;
+        this.readingOffsets = readingOffsets;
+        this.syllableArena = syllableArena;
+        this.memberEntries = memberEntries;
+        this.memberTypes = memberTypes;
+        this.memberFrequencies = memberFrequencies;
+        this.memberExtras = memberExtras;
+
+        int entryCount = textOffsets.length - 1;
+        this.typeMasks = new long[entryCount];
+        this.typeMemberCounts = new int[types.size()];
+        this.entryMemberOffsets = new int[entryCount + 1];
+        for (int m = 0; m < memberEntries.length; m++) {
+            typeMasks[memberEntries[m]] |= 1L << memberTypes[m];
+            typeMemberCounts[memberTypes[m]]++;
+            entryMemberOffsets[memberEntries[m] + 1]++;
+        }
+        for (int e = 0; e < entryCount; e++) {
+            entryMemberOffsets[e + 1] += entryMemberOffsets[e];
+        }
+        this.entryMembers = new int[memberEntries.length];
+        int[] fill = Arrays.copyOf(entryMemberOffsets, entryCount);
+        for (int m = 0; m < memberEntries.length; m++) {
+            entryMembers[fill[memberEntries[m]]++] = m;
+        }
+    }
+
+    public static ItemStore empty() {
+        return new Builder().build();
+    }
+
+    public List<String> getTypes() {
+        return types;
+    }
+
+    public int getEntryCount() {
+        return typeMasks.length;
+    }
+
+    public int getMemberCount() {
+        return memberEntries.length;
+    }
+
+    /**
+     * 分类下的词条数，分类不存在时为 0
+     */
+    public int memberCount(String type) {
+        int t = types.indexOf(type);
+        return t < 0 ? 0 : typeMemberCounts[t];
+    }
+
+    /**
+     * 一组分类名对应的位图，不存在的分类忽略
+     */
+    public long typeMask(Collection<String> typeNames) {
+        long mask = 0;
+        for (String type : typeNames) {
+            int t = types.indexOf(type);
+            if (t >= 0) mask |= 1L << t;
+        }
+        return mask;
+    }
+
+    // ---------- 词条 ----------
+
+    public long getTypeMask(int entry) {
+        return typeMasks[entry];
+    }
+
+    public String text(int entry) {
+        return new String(textArena, textOffsets[entry], textOffsets[entry + 1] - textOffsets[entry]);
+    }
+
+    public int textLength(int entry) {
+        return textOffsets[entry + 1] - textOffsets[entry];
+    }
+
+    public char charAt(int entry, int index) {
+        return textArena[textOffsets[entry] + index];
+    }
+
+    public int charCount(int entry) {
+        return charOffsets[entry + 1] - charOffsets[entry];
+    }
+
+    /**
+     * 词条第一个字的全局下标，第 k 个字为 charStart(entry) + k
+     */
+    public int charStart(int entry) {
+        return charOffsets[entry];
+    }
+
+    /**
+     * 全局第 c 个字的读音与输入字的读音位图是否有交集
+     */
+    public boolean intersects(long[] mask, int c) {
+        for (int i = readingOffsets[c], end = readingOffsets[c + 1]; i < end; i++) {
+            int id = syllableArena[i];
+            int word = id >>> 6;
+            if (word < mask.length && (mask[word] & (1L << id)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 全局第 c 个字的读音 (音节 ID，升序)，返回副本
+     */
+    public short[] readings(int c) {
+        return Arrays.copyOfRange(syllableArena, readingOffsets[c], readingOffsets[c + 1]);
+    }
+
+    public int memberStart(int entry) {
+        return entryMemberOffsets[entry];
+    }
+
+    public int memberEnd(int entry) {
+        return entryMemberOffsets[entry + 1];
+    }
+
+    public int memberAt(int pos) {
+        return entryMembers[pos];
+    }
+
+    // ---------- 出现记录 ----------
+
+    public int entryOf(int member) {
+        return memberEntries[member];
+    }
+
+    public int typeIndexOf(int member) {
+        return memberTypes[member];
+    }
+
+    public String typeOf(int member) {
+        return types.get(memberTypes[member]);
+    }
+
+    public int frequencyOf(int member) {
+        return memberFrequencies[member];
+    }
+
+    public String extraOf(int member) {
+        return memberExtras[member];
+    }
+
+    /**
+     * 还原为加载时的词条，用于在已有存储的基础上追加词库后重新构建
+     */
+    public DictItem toItem(int member) {
+        int entry = memberEntries[member];
+        short[][] pinyins = new short[charCount(entry)][];
+        for (int k = 0; k < pinyins.length; k++) {
+            pinyins[k] = readings(charOffsets[entry] + k);
+        }
+        return new DictItem(text(entry), typeOf(member), memberExtras[member], memberFrequencies[member], pinyins);
+    }
+
+    // ---------- 快照读写 ----------
+
+    char[] textArena() {
+        return textArena;
+    }
+
+    int[] textOffsets() {
+        return textOffsets;
+    }
+
+    int[] charOffsets() {
+        return charOffsets;
+    }
+
+    int[] readingOffsets() {
+        return readingOffsets;
+    }
+
+    short[] syllableArena() {
+        return syllableArena;
+    }
+
+    int[] memberEntries() {
+        return memberEntries;
+    }
+
+    short[] memberTypes() {
+        return memberTypes;
+    }
+
+    int[] memberFrequencies() {
+        return memberFrequencies;
+    }
+
+    String[] memberExtras() {
+        return memberExtras;
+    }
+
+    /**
+     * 构建器：按加载顺序加入词条，文本相同的词条合并为同一个 entry
+     */
+    public static final class Builder {
+        private final List<String> types = new ArrayList<>();
+        private final Map<String, Integer> typeIds = new HashMap<>();
+        private final Map<String, Integer> entryIds = new HashMap<>();
+
+        private char[] textArena = new char[1 << 16];
+        private int textSize;
+        private int[] textOffsets = new int[1 << 12];
+        private int[] charOffsets = new int[1 << 12];
+        private int entryCount;
+        private int[] readingOffsets = new int[1 << 14];
+        private int charCount;
+        private short[] syllableArena = new short[1 << 14];
+        private int syllableSize;
+
+        private int[] memberEntries = new int[1 << 12];
+        private short[] memberTypes = new short[1 << 12];
+        private int[] memberFrequencies = new int[1 << 12];
+        private String[] memberExtras = new String[1 << 12];
+        private int memberCount;
+
+        public int getEntryCount() {
+            return entryCount;
+        }
+
+        /**
+         * @return 词条 ID；文本首次出现时为新分配的 ID (等于加入前的 getEntryCount())
+         */
+        public int add(DictItem item) {
+            Integer typeId = typeIds.get(item.getType());
+            if (typeId == null) {
+                if (types.size() == MAX_TYPES) {
+                    throw new IllegalStateException("分类数超过 " + MAX_TYPES + " 个: " + item.getType());
+                }
+                typeId = types.size();
+                types.add(item.getType());
+                typeIds.put(item.getType(), typeId);
+            }
+
+            Integer entry = entryIds.get(item.getText());
+            if (entry == null) {
+                entry = addEntry(item.getText(), item.getPinyins());
+                entryIds.put(item.getText(), entry);
+            }
+
+            if (memberCount == memberEntries.length) {
+                int newLen = memberCount * 2;
+                memberEntries = Arrays.copyOf(memberEntries, newLen);
+                memberTypes = Arrays.copyOf(memberTypes, newLen);
+                memberFrequencies = Arrays.copyOf(memberFrequencies, newLen);
+                memberExtras = Arrays.copyOf(memberExtras, newLen);
+            }
+            memberEntries[memberCount] = entry;
+            memberTypes[memberCount] = typeId.shortValue();
+            memberFrequencies[memberCount] = item.getFrequency();
+            memberExtras[memberCount] = item.getExtra();
+            memberCount++;
+            return entry;
+        }
+
+        private int addEntry(String text, short[][] pinyins) {
+            if (entryCount + 1 >= textOffsets.length) {
+                textOffsets = Arrays.copyOf(textOffsets, textOffsets.length * 2);
+                charOffsets = Arrays.copyOf(charOffsets, charOffsets.length * 2);
+            }
+            if (textSize + text.length() > textArena.length) {
+                textArena = Arrays.copyOf(textArena, Math.max(textArena.length * 2, textSize + text.length()));
+            }
+            text.getChars(0, text.length(), textArena, textSize);
+            textSize += text.length();
+
+            for (short[] ids : pinyins) {
+                if (charCount + 1 >= readingOffsets.length) {
+                    readingOffsets = Arrays.copyOf(readingOffsets, readingOffsets.length * 2);
+                }
+                if (syllableSize + ids.length > syllableArena.length) {
+                    syllableArena = Arrays.copyOf(syllableArena, Math.max(syllableArena.length * 2, syllableSize + ids.length));
+                }
+                System.arraycopy(ids, 0, syllableArena, syllableSize, ids.length);
+                syllableSize += ids.length;
+                readingOffsets[++charCount] = syllableSize;
+            }
+
+            int entry = entryCount++;
+            textOffsets[entryCount] = textSize;
+            charOffsets[entryCount] = charCount;
+            return entry;
+        }
+
+        public ItemStore build() {
+            return new ItemStore(types,
+                    Arrays.copyOf(textArena, textSize),
+                    Arrays.copyOf(textOffsets, entryCount + 1),
+                    Arrays.copyOf(charOffsets, entryCount + 1),
+                    Arrays.copyOf(readingOffsets, charCount + 1),
+                    Arrays.copyOf(syllableArena, syllableSize),
+                    Arrays.copyOf(memberEntries, memberCount),
+                    Arrays.copyOf(memberTypes, memberCount),
+                    Arrays.copyOf(memberFrequencies, memberCount),
+                    Arrays.copyOf(memberExtras, memberCount));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.oilvegetable.pun_generator.index;
+
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.ObjectReadContext;
+import tools.jackson.core.json.JsonFactory;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 流式读取 JSON 对象数组：逐个 token 解析，每读完一个对象回调一次，不在内存中构建整个文件或 DOM。
+ */
+public final class JsonRecordReader {
+
+    private static final JsonFactory FACTORY = JsonFactory.builder().build();
+
+    private JsonRecordReader() {
+    }
+
+    /**
+     * 依次读取顶层数组中的每个对象，读完后关闭输入流
+     *
+     * @param fields   需要的字段，其余字段 (含嵌套的对象、数组) 直接跳过
+     * @param consumer 接收每个对象的字段值：标量转为字符串，缺失或为 null 的字段不存在；
+     *                 Map 在读取下一个对象时复用，不要在回调外持有
+     */
+    public static void forEach(InputStream in, Set<String> fields, Consumer<Map<String, String>> consumer) {
+        try (JsonParser parser = FACTORY.createParser(ObjectReadContext.empty(), in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("JSON 顶层不是数组");
+            }
+            Map<String, String> record = new HashMap<>();
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new IllegalArgumentException("JSON 数组未结束");
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                record.clear();
+                String name;
+                while ((name = parser.nextName()) != null) {
+                    JsonToken value = parser.nextToken();
+                    if (value.isScalarValue() && value != JsonToken.VALUE_NULL && fields.contains(name)) {
+                        record.put(name, parser.getString());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                consumer.accept(record);
+            }
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package com.github.oilvegetable.pun_generator.index;
+
+import java.util.Arrays;
+
+/**
+ * 词条读音序列上的 Aho-Corasick 自动机，用于整句扫描：一次线性扫描找出与输入任意一段同音的全部词条。
+ * <p>
+ * 字母表为模糊音等价类 ID (未配置规则时即音节 ID，见 {@link FuzzyPinyin})。
+ * 多音字按每种读音展开为多条路径插入 (每个词条最多 {@link #MAX_PATHS} 条)；
+ * 输入中的多音字则同时沿每种读音转移，扫描时维护一组活动状态。
+ * 转移、失配与输出均以 CSR 形式存放在原始数组中，构建后只读，可并发扫描。
+ */
+public final class PhraseAutomaton {
+
+    // 单个词条多音字展开的路径数上限，超出的读音组合不再插入 (收录的词条中极少超过)
+    public static final int MAX_PATHS = 64;
+    // 收录的最短词条，单字会与句中几乎每个字同音
+    public static final int MIN_LENGTH = 2;
+
+    private static final int ROOT = 0;
+
+    // 节点 u 的子节点为 edgeChildren[edgeStart[u] .. edgeStart[u + 1])，按 edgeSymbols 升序
+    private final int[] edgeStart;
+    private final short[] edgeSymbols;
+    private final int[] edgeChildren;
+    private final int[] fail;
+    // 沿失配链最近的有输出的节点，没有时为 -1
+    private final int[] outputLink;
+    // 节点 u 结束的词条为 outputs[outputStart[u] .. outputStart[u + 1])
+    private final int[] outputStart;
+    private final int[] outputs;
+    private final short[] depths;
+
+    PhraseAutomaton(int[] edgeStart, short[] edgeSymbols, int[] edgeChildren, int[] fail, int[] outputLink,
+                    int[] outputStart, int[] outputs, short[] depths) {
+        this.edgeStart = edgeStart;
+        this.edgeSymbols = edgeSymbols;
+        this.edgeChildren = edgeChildren;
+        this.fail = fail;
+        this.outputLink = outputLink;
+        this.outputStart = outputStart;
+        this.outputs = outputs;
+        this.depths = depths;
+    }
+
+    public static PhraseAutomaton empty() {
+        return new Builder().build();
+    }
+
+    /**
+     * 由词条存储构建：只收录字数 >= MIN_LENGTH 且全部为汉字 (每个字都有读音) 的词条
+     */
+    public static PhraseAutomaton build(ItemStore store, FuzzyPinyin fuzzyPinyin) {
+        // 边数不超过收录的总字数 (多音字展开后略多)，按总字数预分配，避免构建中反复扩容
+        int entryCount = store.getEntryCount();
+        int charTotal = entryCount == 0 ? 0 : store.charStart(entryCount - 1) + store.charCount(entryCount - 1);
+        Builder builder = new Builder(charTotal);
+        for (int entry = 0; entry < store.getEntryCount(); entry++) {
+            int length = store.charCount(entry);
+            if (length < MIN_LENGTH || length != store.textLength(entry) || length > Short.MAX_VALUE) continue;
+            short[][] classes = new short[length][];
+            for (int k = 0; k < length; k++) {
+                classes[k] = fuzzyPinyin.toClasses(store.readings(store.charStart(entry) + k));
+            }
+            builder.add(entry, classes);
+        }
+        return builder.build();
+    }
+
+    public int getNodeCount() {
+        return fail.length;
+    }
+
+    // ---------- 快照读写 ----------
+
+    int[] edgeStart() {
+        return edgeStart;
+    }
+
+    short[] edgeSymbols() {
+        return edgeSymbols;
+    }
+
+    int[] edgeChildren() {
+        return edgeChildren;
+    }
+
+    int[] fail() {
+        return fail;
+    }
+
+    int[] outputLink() {
+        return outputLink;
+    }
+
+    int[] outputStart() {
+        return outputStart;
+    }
+
+    int[] outputs() {
+        return outputs;
+    }
+
+    short[] depths() {
+        return depths;
+    }
+
+    /**
+     * 命中回调：输入中 [end - length, end) 这一段与词条 entry 同音
+     */
+    @FunctionalInterface
+    public interface HitVisitor {
+        void visit(int end, int length, int entry);
+    }
+
+    /**
+     * 扫描输入的读音序列。同一段与同一词条经由不同读音路径命中时只回调一次
+     *
+     * @param inputSymbols 每个输入位置的读音等价类 ID；空数组表示该位置没有读音 (标点等)，匹配在此断开
+     */
+    public void scan(short[][] inputSymbols, HitVisitor visitor) {
+        int[] active = {ROOT};
+        int activeSize = 1;
+        int[] next = new int[4];
+        // 本位置已回调过的词条，用于去重 (同一结束位置下长度由节点深度唯一确定)
+        IntSet reported = new IntSet();
+        for (int pos = 0; pos < inputSymbols.length; pos++) {
+            short[] symbols = inputSymbols[pos];
+            int nextSize = 0;
+            for (int i = 0; i < activeSize; i++) {
+                for (short symbol : symbols) {
+                    int state = transition(active[i], symbol);
+                    if (contains(next, nextSize, state)) continue;
+                    if (nextSize == next.length) next = Arrays.copyOf(next, nextSize * 2);
+                    next[nextSize++] = state;
+                }
+            }
+            if (nextSize == 0) {
+                next[nextSize++] = ROOT;
+            }
+
+            reported.clear();
+            for (int i = 0; i < nextSize; i++) {
+                for (int node = outputStart[next[i]] < outputStart[next[i] + 1] ? next[i] : outputLink[next[i]];
+                     node >= 0; node = outputLink[node]) {
+                    for (int o = outputStart[node]; o < outputStart[node + 1]; o++) {
+                        if (reported.add(outputs[o])) {
+                            visitor.visit(pos + 1, depths[node], outputs[o]);
+                        }
+                    }
+                }
+            }
+
+            int[] swap = active;
+            active = next;
+            activeSize = nextSize;
+            next = swap;
+        }
+    }
+
+    private static boolean contains(int[] values, int size, int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) return true;
+        }
+        return false;
+    }
+
+    private int transition(int state, int symbol) {
+        while (true) {
+            int child = child(state, symbol);
+            if (child >= 0) return child;
+            if (state == ROOT) return ROOT;
+            state = fail[state];
+        }
+    }
+
+    private int child(int node, int symbol) {
+        int lo = edgeStart[node];
+        int hi = edgeStart[node + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int s = edgeSymbols[mid];
+            if (s < symbol) {
+                lo = mid + 1;
+            } else if (s > symbol) {
+                hi = mid - 1;
+            } else {
+                return edgeChildren[mid];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 扫描时的去重集合：开放寻址，按位置清空，数量很少时线性探测即可
+     */
+    private static final class IntSet {
+        private int[] slots = new int[16];
+        private int size;
+
+        boolean add(int value) {
+            if ((size + 1) * 2 > slots.length) {
+                int[] old = slots;
+                slots = new int[old.length * 2];
+                size = 0;
+                for (int v : old) {
+                    if (v != 0) insert(v);
+                }
+            }
+            return insert(value + 1);
+        }
+
+        private boolean insert(int key) {
+            int mask = slots.length - 1;
+            for (int i = (key * 0x9E3779B9) >>> 16 & mask; ; i = (i + 1) & mask) {
+                if (slots[i] == key) return false;
+                if (slots[i] == 0) {
+                    slots[i] = key;
+                    size++;
+                    return true;
+                }
+            }
+        }
+
+        void clear() {
+            if (size > 0) {
+                Arrays.fill(slots, 0);
+                size = 0;
+            }
+        }
+    }
+
+    /**
+     * 构建器：先插入全部路径成为字典树，再按层序求失配链并冻结为 CSR 数组
+     */
+    public static final class Builder {
+        // (父节点 << 16 | 符号) -> 子节点，开放寻址
+        private long[] edgeKeys;
+        private int[] edgeValues;
+        private int edgeCount;
+        private int nodeCount = 1;
+        private short[] depths;
+        // (节点, 词条) 输出对
+        private int[] outputNodes = new int[1 << 12];
+        private int[] outputEntries = new int[1 << 12];
+        private int outputCount;
+
+        public Builder() {
+            this(0);
+        }
+
+        /**
+         * @param expectedEdges 预计的边数，用于预分配
+         */
+        public Builder(int expectedEdges) {
+            int capacity = Integer.highestOneBit(Math.max(1 << 15, expectedEdges) * 2 - 1) * 2;
+            edgeKeys = new long[capacity];
+            edgeValues = new int[capacity];
+            depths = new short[Math.max(1 << 14, expectedEdges + 1)];
+            Arrays.fill(edgeKeys, -1);
+        }
+
+        /**
+         * @param classes 词条每个字的读音等价类 ID，多音字按各读音展开
+         */
+        public void add(int entry, short[][] classes) {
+            int[] nodes = {ROOT};
+            int nodeSize = 1;
+            for (short[] symbols : classes) {
+                int paths = Math.min(MAX_PATHS, nodeSize * symbols.length);
+                int[] nextNodes = new int[paths];
+                int n = 0;
+                for (int i = 0; i < nodeSize && n < paths; i++) {
+                    for (int j = 0; j < symbols.length && n < paths; j++) {
+                        int child = childOrCreate(nodes[i], symbols[j]);
+                        if (!contains(nextNodes, n, child)) {
+                            nextNodes[n++] = child;
+                        }
+                    }
+                }
+                nodes = nextNodes;
+                nodeSize = n;
+            }
+            for (int i = 0; i < nodeSize; i++) {
+                if (outputCount == outputNodes.length) {
+                    outputNodes = Arrays.copyOf(outputNodes, outputCount * 2);
+                    outputEntries = Arrays.copyOf(outputEntries, outputCount * 2);
+                }
+                outputNodes[outputCount] = nodes[i];
+                outputEntries[outputCount++] = entry;
+            }
+        }
+
+        private int childOrCreate(int parent, int symbol) {
+            long key = ((long) parent << 16) | (symbol & 0xFFFF);
+            int slot = findSlot(edgeKeys, key);
+            if (edgeKeys[slot] == key) return edgeValues[slot];
+
+            int child = nodeCount++;
+            if (child == depths.length) {
+                depths = Arrays.copyOf(depths, child * 2);
+            }
+            depths[child] = (short) (depths[parent] + 1);
+            edgeKeys[slot] = key;
+            edgeValues[slot] = child;
+            if (++edgeCount * 2 > edgeKeys.length) {
+                rehash();
+            }
+            return child;
+        }
+
+        private static int findSlot(long[] keys, long key) {
+            int mask = keys.length - 1;
+            int i = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+            while (keys[i] != -1 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        private void rehash() {
+            long[] oldKeys = edgeKeys;
+            int[] oldValues = edgeValues;
+            edgeKeys = new long[oldKeys.length * 2];
+            edgeValues = new int[oldKeys.length * 2];
+            Arrays.fill(edgeKeys, -1);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != -1) {
+                    int slot = findSlot(edgeKeys, oldKeys[i]);
+                    edgeKeys[slot] = oldKeys[i];
+                    edgeValues[slot] = oldValues[i];
+                }
+            }
+        }
+
+        public PhraseAutomaton build() {
+            // 1. 边按 (父节点, 符号) 排序后即为 CSR
+            long[] keys = new long[edgeCount];
+            int n = 0;
+            for (long key : edgeKeys) {
+                if (key != -1) keys[n++] = key;
+            }
+            Arrays.sort(keys);
+            int[] edgeStart = new int[nodeCount + 1];
+            short[] edgeSymbols = new short[edgeCount];
+            int[] edgeChildren = new int[edgeCount];
+            for (int i = 0; i < edgeCount; i++) {
+                edgeStart[(int) (keys[i] >>> 16) + 1]++;
+                edgeSymbols[i] = (short) keys[i];
+                edgeChildren[i] = edgeValues[findSlot(edgeKeys, keys[i])];
+            }
+            for (int u = 0; u < nodeCount; u++) {
+                edgeStart[u + 1] += edgeStart[u];
+            }
+
+            // 2. 输出按节点分组
+            int[] outputStart = new int[nodeCount + 1];
+            for (int i = 0; i < outputCount; i++) {
+                outputStart[outputNodes[i] + 1]++;
+            }
+            for (int u = 0; u < nodeCount; u++) {
+                outputStart[u + 1] += outputStart[u];
+            }
+            int[] outputs = new int[outputCount];
+            int[] fill = Arrays.copyOf(outputStart, nodeCount);
+            for (int i = 0; i < outputCount; i++) {
+                outputs[fill[outputNodes[i]]++] = outputEntries[i];
+            }
+
+            PhraseAutomaton automaton = new PhraseAutomaton(edgeStart, edgeSymbols, edgeChildren, new int[nodeCount], new int[nodeCount],
+                    outputStart, outputs, Arrays.copyOf(depths, nodeCount));
+
+            // 3. 层序求失配链与输出链，父节点总在子节点之前处理
+            int[] queue = new int[nodeCount];
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = ROOT;
+            automaton.outputLink[ROOT] = -1;
+            while (head < tail) {
+                int u = queue[head++];
+                for (int e = edgeStart[u]; e < edgeStart[u + 1]; e++) {
+                    int v = edgeChildren[e];
+                    int f = ROOT;
+                    if (u != ROOT) {
+                        f = automaton.transition(automaton.fail[u], edgeSymbols[e]);
+                    }
+                    automaton.fail[v] = f;
+                    automaton.outputLink[v] = outputStart[f] < outputStart[f + 1] ? f : automaton.outputLink[f];
+                    queue[tail++] = v;
+                }
+            }
+            return automaton;
+        }
+    }
+}
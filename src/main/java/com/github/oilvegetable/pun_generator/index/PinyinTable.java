@@ -0,0 +1,96 @@
+package com.github.oilvegetable.pun_generator.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * 字 -> 无调音节 ID 查找表，启动时从资源文件 (由 PinyinTableGenerator 生成) 加载一次。
+ * 音节 ID 按音节字母序固定分配，建索引与查询共用同一张表，查字只需一次数组访问，无正则、无字符串分配。
+ */
+public final class PinyinTable {
+
+    public static final String RESOURCE = "pinyin/char-syllables.txt";
+
+    private final SyllableTable syllableTable;
+    private final char firstChar;
+    // readings[c - firstChar] 为该字全部读音的音节 ID (升序)，非汉字为 null；读音相同的字共用同一数组，调用方不可修改
+    private final short[][] readings;
+
+    private static final class Holder {
+        static final PinyinTable INSTANCE = load(RESOURCE);
+    }
+
+    private PinyinTable(SyllableTable syllableTable, char firstChar, short[][] readings) {
+        this.syllableTable = syllableTable;
+        this.firstChar = firstChar;
+        this.readings = readings;
+    }
+
+    /**
+     * 默认表 (classpath 下的 {@link #RESOURCE})，首次使用时加载
+     */
+    public static PinyinTable getDefault() {
+        return Holder.INSTANCE;
+    }
+
+    public static PinyinTable load(String resource) {
+        InputStream in = PinyinTable.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            throw new IllegalStateException("未找到拼音表: " + resource);
+        }
+        List<String> lines = new ArrayList<>();
+        TreeSet<String> syllables = new TreeSet<>();
+        char min = Character.MAX_VALUE;
+        char max = Character.MIN_VALUE;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() < 3 || line.charAt(0) == '#') continue;
+                lines.add(line);
+                syllables.addAll(Arrays.asList(line.substring(2).split(" ")));
+                min = (char) Math.min(min, line.charAt(0));
+                max = (char) Math.max(max, line.charAt(0));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("拼音表读取失败: " + resource, e);
+        }
+
+        SyllableTable syllableTable = new SyllableTable(new ArrayList<>(syllables));
+        short[][] readings = new short[lines.isEmpty() ? 0 : max - min + 1][];
+        Map<String, short[]> shared = new HashMap<>();
+        for (String line : lines) {
+            readings[line.charAt(0) - min] = shared.computeIfAbsent(line.substring(2), key -> {
+                String[] parts = key.split(" ");
+                short[] ids = new short[parts.length];
+                for (int i = 0; i < parts.length; i++) {
+                    ids[i] = (short) syllableTable.idOf(parts[i]);
+                }
+                Arrays.sort(ids);
+                return ids;
+            });
+        }
+        return new PinyinTable(syllableTable, min, readings);
+    }
+
+    /**
+     * 字的全部读音音节 ID (升序)，非汉字返回 null
+     */
+    public short[] get(char c) {
+        int i = c - firstChar;
+        return i >= 0 && i < readings.length ? readings[i] : null;
+    }
+
+    public SyllableTable getSyllableTable() {
+        return syllableTable;
+    }
+}
@@ -0,0 +1,316 @@
+package com.github.oilvegetable.pun_generator.index;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 倒排索引：音节 ID (配置模糊音时为等价类 ID，见 {@link FuzzyPinyin}) -> 词条 ID，以 CSR (压缩稀疏行) 的原始 int 数组存储。
+ * 音节 s 的倒排表为 postings[offsets[s] .. offsets[s + 1])，表内词条 ID 升序且不重复。
+ */
+public final class PostingIndex {
+
+    private final int itemCount;
+    private final int[] offsets;
+    private final int[] postings;
+
+    // 候选计数用的临时数组池，各索引版本共用，按需扩容；池外的并发请求临时分配，用完丢弃
+    private static final int MAX_POOLED_SCRATCH = Runtime.getRuntime().availableProcessors() * 2;
+    private static final Queue<Scratch> SCRATCH_POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger SCRATCH_POOLED = new AtomicInteger();
+
+    PostingIndex(int itemCount, int[] offsets, int[] postings) {
+        this.itemCount = itemCount;
+        this.offsets = offsets;
+        this.postings = postings;
+    }
+
+    private Scratch acquire() {
+        Scratch s = SCRATCH_POOL.poll();
+        if (s == null) return new Scratch(itemCount);
+        SCRATCH_POOLED.decrementAndGet();
+        s.ensureCapacity(itemCount);
+        return s;
+    }
+
+    private static void release(Scratch s) {
+        s.reset();
+        if (SCRATCH_POOLED.incrementAndGet() <= MAX_POOLED_SCRATCH) {
+            SCRATCH_POOL.offer(s);
+        } else {
+            SCRATCH_POOLED.decrementAndGet();
+        }
+    }
+
+    public static PostingIndex empty() {
+        return new PostingIndex(0, new int[1], new int[0]);
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public int getSyllableCount() {
+        return offsets.length - 1;
+    }
+
+    public int postingStart(int syllable) {
+        return syllable < 0 || syllable >= getSyllableCount() ? 0 : offsets[syllable];
+    }
+
+    public int postingEnd(int syllable) {
+        return syllable < 0 || syllable >= getSyllableCount() ? 0 : offsets[syllable + 1];
+    }
+
+    public int postingAt(int pos) {
+        return postings[pos];
+    }
+
+    int[] offsets() {
+        return offsets;
+    }
+
+    int[] postings() {
+        return postings;
+    }
+
+    /**
+     * 计数式候选筛选：统计每个词条命中了多少个不同的输入位置，
+     * 只返回命中位置数 >= minHits 的词条 ID (升序)。
+     * 一个输入位置的多个读音命中同一词条只计一次。
+     *
+     * @param inputPinyins 每个输入位置的读音音节 ID
+     * @param minHits      最少命中的输入位置数
+     */
+    public int[] collect(List<short[]> inputPinyins, int minHits) {
+        Scratch s = acquire();
+        try {
+            count(s, inputPinyins);
+            return s.select(minHits);
+        } finally {
+            release(s);
+        }
+    }
+
+    /**
+     * 与 {@link #collect} 相同，同时返回每个候选命中的输入位置数 (匹配字数的上界)
+     */
+    public Candidates collectWithHits(List<short[]> inputPinyins, int minHits) {
+        Scratch s = acquire();
+        try {
+            count(s, inputPinyins);
+            return s.selectWithHits(minHits);
+        } finally {
+            release(s);
+        }
+    }
+
+    private void count(Scratch s, List<short[]> inputPinyins) {
+        for (int pos = 0; pos < inputPinyins.size(); pos++) {
+            long stamp = (long) (pos + 1) << 32;
+            for (short py : inputPinyins.get(pos)) {
+                int end = postingEnd(py);
+                for (int p = postingStart(py); p < end; p++) {
+                    int item = postings[p];
+                    long slot = s.slots[item];
+                    if ((slot & STAMP_MASK) == stamp) continue;
+                    if (slot == 0) {
+                        s.touch(item);
+                    }
+                    s.slots[item] = stamp | ((int) slot + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * 一个输入位置全部读音的倒排表并集 (升序去重)，批量查询时同一组读音只求一次
+     */
+    public int[] union(short[] syllables) {
+        if (syllables.length == 1) {
+            return Arrays.copyOfRange(postings, postingStart(syllables[0]), postingEnd(syllables[0]));
+        }
+        int total = 0;
+        for (short py : syllables) {
+            total += postingEnd(py) - postingStart(py);
+        }
+        int[] merged = new int[total];
+        int n = 0;
+        for (short py : syllables) {
+            int start = postingStart(py);
+            int len = postingEnd(py) - start;
+            System.arraycopy(postings, start, merged, n, len);
+            n += len;
+        }
+        Arrays.sort(merged);
+        int distinct = 0;
+        for (int i = 0; i < merged.length; i++) {
+            if (distinct == 0 || merged[i] != merged[distinct - 1]) {
+                merged[distinct++] = merged[i];
+            }
+        }
+        return Arrays.copyOf(merged, distinct);
+    }
+
+    /**
+     * 与 {@link #collect} 相同的计数筛选，输入为每个位置预先求好的并集 (见 {@link #union})
+     */
+    public int[] collectUnions(List<int[]> positionItems, int minHits) {
+        Scratch s = acquire();
+        try {
+            countUnions(s, positionItems);
+            return s.select(minHits);
+        } finally {
+            release(s);
+        }
+    }
+
+    public Candidates collectUnionsWithHits(List<int[]> positionItems, int minHits) {
+        Scratch s = acquire();
+        try {
+            countUnions(s, positionItems);
+            return s.selectWithHits(minHits);
+        } finally {
+            release(s);
+        }
+    }
+
+    private static void countUnions(Scratch s, List<int[]> positionItems) {
+        for (int[] positionItem : positionItems) {
+            for (int item : positionItem) {
+                if (s.slots[item]++ == 0) {
+                    s.touch(item);
+                }
+            }
+        }
+    }
+
+    /**
+     * 候选词条 ID (升序) 及各自命中的不同输入位置数
+     */
+    public static final class Candidates {
+        public final int[] ids;
+        public final int[] hits;
+
+        public Candidates(int[] ids, int[] hits) {
+            this.ids = ids;
+            this.hits = hits;
+        }
+    }
+
+    // 计数槽的高 32 位：最近一次计入该词条的输入位置 + 1，同一位置的多个读音只计一次
+    private static final long STAMP_MASK = 0xFFFFFFFF00000000L;
+
+    /**
+     * 每个词条一个计数槽：低 32 位为命中的输入位置数，高 32 位为位置戳 (见 STAMP_MASK)；
+     * 用完只清零本次触及的槽
+     */
+    private static final class Scratch {
+        long[] slots;
+        int[] touched = new int[1024];
+        int touchedSize;
+
+        Scratch(int itemCount) {
+            this.slots = new long[itemCount];
+        }
+
+        void ensureCapacity(int itemCount) {
+            if (slots.length < itemCount) {
+                slots = new long[itemCount];
+            }
+        }
+
+        void touch(int item) {
+            if (touchedSize == touched.length) {
+                touched = Arrays.copyOf(touched, touchedSize * 2);
+            }
+            touched[touchedSize++] = item;
+        }
+
+        /**
+         * 命中次数 >= minHits 的词条 ID (升序)
+         */
+        int[] select(int minHits) {
+            int[] result = new int[touchedSize];
+            int n = 0;
+            for (int i = 0; i < touchedSize; i++) {
+                int item = touched[i];
+                if ((int) slots[item] >= minHits) {
+                    result[n++] = item;
+                }
+            }
+            result = Arrays.copyOf(result, n);
+            Arrays.sort(result);
+            return result;
+        }
+
+        Candidates selectWithHits(int minHits) {
+            int[] ids = select(minHits);
+            int[] hits = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                hits[i] = (int) slots[ids[i]];
+            }
+            return new Candidates(ids, hits);
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedSize; i++) {
+                slots[touched[i]] = 0;
+            }
+            touchedSize = 0;
+        }
+    }
+
+    /**
+     * 构建器：词条 ID 需按升序加入，构建完成后冻结为 CSR 数组
+     */
+    public static final class Builder {
+        private int[][] lists = new int[512][];
+        private int[] sizes = new int[512];
+        private int itemCount;
+
+        public void add(int itemId, short[][] pinyins) {
+            itemCount = Math.max(itemCount, itemId + 1);
+            for (short[] ids : pinyins) {
+                for (short py : ids) {
+                    append(py, itemId);
+                }
+            }
+        }
+
+        private void append(int syllable, int itemId) {
+            if (syllable >= lists.length) {
+                int newLen = Math.max(lists.length * 2, syllable + 1);
+                lists = Arrays.copyOf(lists, newLen);
+                sizes = Arrays.copyOf(sizes, newLen);
+            }
+            int[] list = lists[syllable];
+            int size = sizes[syllable];
+            // 同一词条多个字读音相同，只记一次
+            if (size > 0 && list[size - 1] == itemId) return;
+            if (list == null) {
+                list = lists[syllable] = new int[8];
+            } else if (size == list.length) {
+                list = lists[syllable] = Arrays.copyOf(list, size * 2);
+            }
+            list[size] = itemId;
+            sizes[syllable] = size + 1;
+        }
+
+        public PostingIndex build(int syllableCount) {
+            int[] offsets = new int[syllableCount + 1];
+            for (int s = 0; s < syllableCount; s++) {
+                offsets[s + 1] = offsets[s] + (s < sizes.length ? sizes[s] : 0);
+            }
+            int[] postings = new int[offsets[syllableCount]];
+            for (int s = 0; s < Math.min(syllableCount, lists.length); s++) {
+                if (sizes[s] > 0) {
+                    System.arraycopy(lists[s], 0, postings, offsets[s], sizes[s]);
+                }
+            }
+            return new PostingIndex(itemCount, offsets, postings);
+        }
+    }
+}
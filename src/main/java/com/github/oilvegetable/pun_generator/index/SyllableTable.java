@@ -0,0 +1,68 @@
+package com.github.oilvegetable.pun_generator.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 音节字典：为每个无声调拼音音节分配一个稠密的 int ID。
+ * 普通话无调音节只有 ~410 个，因此一个字的全部读音可以用 short[] 表示，
+ * 输入侧的读音集合则用 long[] 位图表示，匹配时只需位运算。
+ */
+public final class SyllableTable {
+
+    private final Map<String, Integer> idMap = new HashMap<>();
+    private final List<String> syllables;
+
+    /**
+     * 按给定顺序建立音节表 (下标即 ID)，重复的音节只保留第一次出现；建立后不再变化
+     */
+    public SyllableTable(List<String> syllables) {
+        List<String> distinct = new ArrayList<>(syllables.size());
+        for (String syllable : syllables) {
+            if (idMap.putIfAbsent(syllable, distinct.size()) == null) {
+                distinct.add(syllable);
+            }
+        }
+        this.syllables = Collections.unmodifiableList(distinct);
+    }
+
+    /**
+     * 查询音节 ID，不存在返回 -1
+     */
+    public int idOf(String syllable) {
+        Integer id = idMap.get(syllable);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * 全部音节 (下标即 ID，只读)
+     */
+    public List<String> getSyllables() {
+        return syllables;
+    }
+
+    public int size() {
+        return syllables.size();
+    }
+
+    /**
+     * 位图所需的 long 个数
+     */
+    public int maskWords() {
+        return (size() + 63) >>> 6;
+    }
+
+    /**
+     * 将一组音节 ID 转为位图
+     */
+    public long[] toMask(short[] ids) {
+        long[] mask = new long[maskWords()];
+        for (short id : ids) {
+            mask[id >>> 6] |= 1L << id;
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,221 @@
+package com.github.oilvegetable.pun_generator.metrics;
+
+import com.github.oilvegetable.pun_generator.config.PunProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 生成流程的分阶段指标，通过 Micrometer 导出到 /actuator/metrics，并记录慢查询
+ */
+@Component
+public class PunMetrics {
+
+    @Autowired
+    private PunProperties punProperties;
+    @Autowired
+    private MeterRegistry registry;
+
+    private Timer totalTimer;
+    private final Map<SearchTrace.Stage, Timer> stageTimers = new EnumMap<>(SearchTrace.Stage.class);
+    private DistributionSummary candidateSummary;
+    private DistributionSummary matchSummary;
+    private Counter cacheHitCounter;
+    private Counter slowQueryCounter;
+    private Counter truncatedCounter;
+    private Counter rejectedCounter;
+    private Counter cacheLookupHitCounter;
+    private Counter cacheLookupMissCounter;
+    private Counter cacheEvictionCounter;
+    private final AtomicLong warmupRounds = new AtomicLong();
+    private final AtomicLong warmupQueries = new AtomicLong();
+    private Timer warmupTimer;
+    private Timer typeaheadTimer;
+    private Timer typeaheadColdTimer;
+
+    @PostConstruct
+    public void init() {
+        this.totalTimer = Timer.builder("pun.generate")
+                .description("生成总耗时")
+                .publishPercentileHistogram()
+                .register(registry);
+        for (SearchTrace.Stage stage : SearchTrace.Stage.values()) {
+            stageTimers.put(stage, Timer.builder("pun.generate.stage")
+                    .description("生成各阶段耗时")
+                    .tag("stage", stage.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        this.candidateSummary = DistributionSummary.builder("pun.generate.candidates")
+                .description("候选集大小")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.matchSummary = DistributionSummary.builder("pun.generate.matches")
+                .description("匹配成功的词条数")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.cacheHitCounter = Counter.builder("pun.generate.cache.hits")
+                .description("命中匹配结果缓存的查询数")
+                .register(registry);
+        this.slowQueryCounter = Counter.builder("pun.generate.slow")
+                .description("慢查询数")
+                .register(registry);
+        this.truncatedCounter = Counter.builder("pun.generate.truncated")
+                .description("超出时间或候选预算、返回部分结果的查询数")
+                .register(registry);
+        this.rejectedCounter = Counter.builder("pun.generate.rejected")
+                .description("重查询过多被拒绝的查询数")
+                .register(registry);
+        // 匹配结果缓存随索引替换，计数放在这里，重新加载后继续累计
+        this.cacheLookupHitCounter = Counter.builder("pun.cache.lookups")
+                .description("匹配结果缓存的查找次数")
+                .tag("result", "hit")
+                .register(registry);
+        this.cacheLookupMissCounter = Counter.builder("pun.cache.lookups")
+                .description("匹配结果缓存的查找次数")
+                .tag("result", "miss")
+                .register(registry);
+        this.cacheEvictionCounter = Counter.builder("pun.cache.evictions")
+                .description("匹配结果缓存因容量或过期淘汰的条数")
+                .register(registry);
+        this.warmupTimer = Timer.builder("pun.warmup")
+                .description("启动预热耗时")
+                .register(registry);
+        Gauge.builder("pun.warmup.rounds", warmupRounds, AtomicLong::get)
+                .description("启动预热执行的轮数")
+                .register(registry);
+        Gauge.builder("pun.warmup.queries", warmupQueries, AtomicLong::get)
+                .description("启动预热执行的查询次数")
+                .register(registry);
+        this.typeaheadTimer = Timer.builder("pun.typeahead")
+                .description("边输入边搜索每次按键的耗时")
+                .tag("incremental", "true")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.typeaheadColdTimer = Timer.builder("pun.typeahead")
+                .description("边输入边搜索每次按键的耗时")
+                .tag("incremental", "false")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void recordWarmup(long nanos, int rounds, long queries) {
+        warmupTimer.record(nanos, TimeUnit.NANOSECONDS);
+        warmupRounds.set(rounds);
+        warmupQueries.set(queries);
+    }
+
+    /**
+     * @param incremental 是否沿用了上一次输入的会话
+     */
+    public void recordTypeahead(long nanos, boolean incremental) {
+        (incremental ? typeaheadTimer : typeaheadColdTimer).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 协调者请求一个分片的耗时，分片地址来自配置，标签基数有限
+     * @param outcome ok / timeout / error
+     */
+    public void recordShard(String shard, long nanos, String outcome) {
+        Timer.builder("pun.shard.request")
+                .description("协调者请求分片的耗时")
+                .tag("shard", shard)
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordCacheLookup(boolean hit) {
+        (hit ? cacheLookupHitCounter : cacheLookupMissCounter).increment();
+    }
+
+    public void recordCacheEviction() {
+        cacheEvictionCounter.increment();
+    }
+
+    /**
+     * 当前缓存的条数，由持有索引的一方提供
+     */
+    public void registerCacheSize(Supplier<Number> size) {
+        Gauge.builder("pun.cache.size", size)
+                .description("匹配结果缓存的当前条数")
+                .register(registry);
+    }
+
+    /**
+     * 启动以来的缓存命中、未命中与淘汰次数
+     */
+    public Map<String, Long> getCacheStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", (long) cacheLookupHitCounter.count());
+        stats.put("misses", (long) cacheLookupMissCounter.count());
+        stats.put("evictions", (long) cacheEvictionCounter.count());
+        return stats;
+    }
+
+    public void recordRejected() {
+        rejectedCounter.increment();
+    }
+
+    public void record(SearchTrace trace) {
+        trace.finish();
+        totalTimer.record(trace.getTotalNanos(), TimeUnit.NANOSECONDS);
+        for (SearchTrace.Stage stage : SearchTrace.Stage.values()) {
+            stageTimers.get(stage).record(trace.getStageNanos(stage), TimeUnit.NANOSECONDS);
+        }
+        if (trace.isCacheHit()) {
+            cacheHitCounter.increment();
+        } else {
+            candidateSummary.record(trace.getCandidateCount());
+            matchSummary.record(trace.getMatchCount());
+        }
+        if (trace.isTruncated()) {
+            truncatedCounter.increment();
+        }
+        // 请求中未配置的分类已在 searchTypes 中丢弃，标签只会是已配置的分类
+        for (Map.Entry<String, Integer> entry : trace.getResultCounts().entrySet()) {
+            DistributionSummary.builder("pun.generate.results")
+                    .description("每个分类的结果数")
+                    .tag("type", entry.getKey())
+                    .register(registry)
+                    .record(entry.getValue());
+        }
+
+        long totalMillis = TimeUnit.NANOSECONDS.toMillis(trace.getTotalNanos());
+        if (punProperties.getSlowQueryThresholdMs() > 0 && totalMillis >= punProperties.getSlowQueryThresholdMs()) {
+            slowQueryCounter.increment();
+            System.out.println(formatSlowQuery(trace, totalMillis));
+        }
+    }
+
+    private String formatSlowQuery(SearchTrace trace, long totalMillis) {
+        StringBuilder sb = new StringBuilder("慢查询: ")
+                .append(totalMillis).append("ms")
+                .append(", word=").append(trace.getWord())
+                .append(", types=").append(trace.getTypes())
+                .append(", ignoreOrder=").append(trace.isIgnoreOrder())
+                .append(", cacheHit=").append(trace.isCacheHit())
+                .append(", candidates=").append(trace.getCandidateCount())
+                .append(", matches=").append(trace.getMatchCount())
+                .append(", truncated=").append(trace.isTruncated())
+                .append(", stages=[");
+        for (SearchTrace.Stage stage : SearchTrace.Stage.values()) {
+            if (stage.ordinal() > 0) sb.append(", ");
+            sb.append(stage.name().toLowerCase()).append('=')
+                    .append(TimeUnit.NANOSECONDS.toMillis(trace.getStageNanos(stage))).append("ms");
+        }
+        return sb.append(']').toString();
+    }
+}
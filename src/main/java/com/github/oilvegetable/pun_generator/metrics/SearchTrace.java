@@ -0,0 +1,70 @@
+package com.github.oilvegetable.pun_generator.metrics;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单次搜索的分阶段耗时与基数记录，非线程安全：调用必须串行。
+ * 流式生成中记录会交给 streamExecutor 上的任务，这些任务由 CompletableFuture 链依次执行，
+ * 前一个任务的写入对后一个任务可见 (happens-before)，因此不需要加锁
+ */
+@Getter
+public class SearchTrace {
+
+    public enum Stage {
+        PINYIN,      // 拼音转换
+        CANDIDATES,  // 候选集筛选
+        MATCH,       // 细算
+        MERGE,       // 代入汉字并合并
+        SORT         // 排序 / top-K
+    }
+
+    private final String word;
+    private final List<String> types;
+    private final boolean ignoreOrder;
+    private final long startNanos = System.nanoTime();
+    private final long[] stageNanos = new long[Stage.values().length];
+    private final Map<String, Integer> resultCounts = new LinkedHashMap<>();
+    private long lastMark = startNanos;
+    private long totalNanos;
+
+    @Setter
+    private int candidateCount;
+    @Setter
+    private int matchCount;
+    @Setter
+    private boolean cacheHit;
+    @Setter
+    private boolean truncated;
+
+    public SearchTrace(String word, List<String> types, boolean ignoreOrder) {
+        this.word = word;
+        this.types = types;
+        this.ignoreOrder = ignoreOrder;
+    }
+
+    /**
+     * 将上一次标记到现在的耗时计入该阶段
+     */
+    public void mark(Stage stage) {
+        long now = System.nanoTime();
+        stageNanos[stage.ordinal()] += now - lastMark;
+        lastMark = now;
+    }
+
+    public void addResultCount(String type, int count) {
+        resultCounts.put(type, count);
+    }
+
+    public long getStageNanos(Stage stage) {
+        return stageNanos[stage.ordinal()];
+    }
+
+    void finish() {
+        totalNanos = System.nanoTime() - startNanos;
+    }
+}
@@ -1,19 +1,78 @@
 package com.github.oilvegetable.pun_generator.service;
 
+import com.github.oilvegetable.pun_generator.vo.DictStatus;
+import com.github.oilvegetable.pun_generator.vo.PunPage;
 import com.github.oilvegetable.pun_generator.vo.PunResult;
+import com.github.oilvegetable.pun_generator.vo.TypeaheadPage;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface PunService {
 
     void initData();
 
+    /**
+     * 后台重新加载词库，构建完成后整体替换索引，期间请求继续使用旧索引
+     * @return true 表示已开始构建；false 表示已有构建在进行，结束后会再构建一次
+     */
+    boolean reload();
+
     List<String> getAllTypesOrdered();
 
     List<String> getDefaultSelectedTypes();
 
-    Map<String, List<PunResult>> generatePun(String inputWord, List<String> targetTypes, boolean ignoreOrder);
+    /**
+     * 在预算内生成，预算用完时返回部分结果并将 budget 标记为 truncated
+     * @throws SearchRejectedException 重查询过多且排队超时
+     */
+    Map<String, List<PunResult>> generatePun(String inputWord, List<String> targetTypes, boolean ignoreOrder, SearchBudget budget);
+
+    /**
+     * 批量生成：多个输入共用分类与顺序选项，结果按输入返回
+     * @param limit 每个分类最多返回的条数，<= 0 表示全部返回
+     */
+    Map<String, Map<String, List<PunResult>>> generatePunBatch(List<String> inputWords, List<String> targetTypes, boolean ignoreOrder, int limit);
+
+    /**
+     * 分页生成：首页 cursor 为空，翻页时传入上一页返回的分类游标。
+     * 首页只选出前 limit 条，有下一页的分类总数为下限；首次翻页时完整计算，超出预算时结果不完整 (PunPage.truncated)，
+     * 之后的翻页沿用同一份结果
+     */
+    PunPage generatePunPage(String inputWord, List<String> targetTypes, boolean ignoreOrder, int limit, String cursor, SearchBudget budget);
+
+    /**
+     * 流式生成：每个分类算完后立即回调该分类的结果 (单分类的 PunPage)，回调按 searchOrder 顺序在单独的线程池中进行，可以阻塞
+     * @param limit > 0 时每个分类只回调首页及下一页游标，<= 0 时回调全部结果
+     * @param budget 超出预算时各分类的结果不完整 (PunPage.truncated)
+     * @return 全部分类回调完成后结束
+     */
+    CompletableFuture<Void> generatePunStream(String inputWord, List<String> targetTypes, boolean ignoreOrder, int limit, SearchBudget budget, Consumer<PunPage> onType);
+
+    /**
+     * 整句扫描：找出句中每一段与词条同音的位置，一次线性扫描完成。
+     * 每个分类下，同一段的全部同音词条合并为一条结果：pun 为原句，highlights 为该段的下标，origins 为同音的词条
+     */
+    Map<String, List<PunResult>> scanSentence(String sentence, List<String> targetTypes);
+
+    /**
+     * 边输入边搜索：带上上一次返回的会话令牌时，只计算与上一次输入不同的末尾部分 (追加、删除或改写末尾的字)，
+     * 令牌失效或分类、顺序选项变化时重新开始。每个分类只返回前 limit 条，不分页
+     * @param session 上一次返回的会话令牌，首次为空
+     */
+    TypeaheadPage typeahead(String session, String inputWord, List<String> targetTypes, boolean ignoreOrder, int limit);
 
     Map<String, List<String>> getCategoryMap();
+
+    /**
+     * 分类菜单及每个词库的加载状态 (懒加载时部分词库可能尚未加载)
+     */
+    Map<String, List<DictStatus>> getCategoryStatus();
+
+    /**
+     * 匹配结果缓存统计：启动以来的命中、未命中、淘汰次数 (重新加载不清零) 及当前缓存的条数
+     */
+    Map<String, Long> getCacheStats();
 }
\ No newline at end of file
@@ -0,0 +1,73 @@
+package com.github.oilvegetable.pun_generator.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单次生成的预算：时间上限与候选数上限。
+ * 候选超出上限时只细算上界最高的一部分，细算中途超时则停止，两种情况都返回已算出的部分结果并标记 truncated。
+ * 由请求线程创建，truncated 可能在并行细算的线程中设置
+ */
+public class SearchBudget {
+
+    private static final SearchBudget UNLIMITED = new SearchBudget(0, 0);
+
+    private final long timeoutMs;
+    private final long deadlineNanos;
+    private final int maxCandidates;
+    private volatile boolean truncated;
+
+    private SearchBudget(long timeoutMs, int maxCandidates) {
+        this.timeoutMs = Math.max(0, timeoutMs);
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeoutMs);
+        this.maxCandidates = Math.max(0, maxCandidates);
+    }
+
+    /**
+     * @param timeoutMs     从现在起的时间上限 (毫秒)，<= 0 表示不限
+     * @param maxCandidates 最多细算的候选数，<= 0 表示不限
+     */
+    public static SearchBudget of(long timeoutMs, int maxCandidates) {
+        return new SearchBudget(timeoutMs, maxCandidates);
+    }
+
+    /**
+     * 不限时间与候选数，批量生成及内部调用使用；不会被标记为 truncated
+     */
+    public static SearchBudget unlimited() {
+        return UNLIMITED;
+    }
+
+    public boolean isLimited() {
+        return timeoutMs > 0 || maxCandidates > 0;
+    }
+
+    public boolean hasDeadline() {
+        return timeoutMs > 0;
+    }
+
+    public boolean isExpired() {
+        return timeoutMs > 0 && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * 剩余时间 (毫秒)，不限时间时为 Long.MAX_VALUE
+     */
+    public long remainingMillis() {
+        if (timeoutMs <= 0) return Long.MAX_VALUE;
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    public int getMaxCandidates() {
+        return maxCandidates;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void markTruncated() {
+        if (this != UNLIMITED) {
+            truncated = true;
+        }
+    }
+}
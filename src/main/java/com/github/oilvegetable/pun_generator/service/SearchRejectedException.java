@@ -0,0 +1,15 @@
+package com.github.oilvegetable.pun_generator.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * 同时进行的重查询已达上限且排队超时，请求被拒绝 (429)，客户端可稍后重试
+ */
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class SearchRejectedException extends RuntimeException {
+
+    public SearchRejectedException(String message) {
+        super(message);
+    }
+}
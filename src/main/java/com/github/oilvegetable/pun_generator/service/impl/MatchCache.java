@@ -0,0 +1,46 @@
+package com.github.oilvegetable.pun_generator.service.impl;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.github.oilvegetable.pun_generator.metrics.PunMetrics;
+
+/**
+ * 有界 LRU + TTL 缓存；命中 / 未命中 / 淘汰计入 PunMetrics，计数不随索引替换清零
+ */
+class MatchCache<V> {
+
+    private final LRUCache<String, V> cache;
+    // 为 null 时不计数 (空索引与预热用的无缓存副本)
+    private final PunMetrics metrics;
+
+    MatchCache(int capacity, long timeoutMillis) {
+        this(capacity, timeoutMillis, null);
+    }
+
+    MatchCache(int capacity, long timeoutMillis, PunMetrics metrics) {
+        this.cache = capacity > 0 ? CacheUtil.newLRUCache(capacity, timeoutMillis) : null;
+        this.metrics = metrics;
+        if (cache != null && metrics != null) {
+            // 容量淘汰与过期清理都会回调
+            cache.setListener((key, value) -> metrics.recordCacheEviction());
+        }
+    }
+
+    V get(String key) {
+        V value = cache == null ? null : cache.get(key, false);
+        if (metrics != null) {
+            metrics.recordCacheLookup(value != null);
+        }
+        return value;
+    }
+
+    void put(String key, V value) {
+        if (cache != null) {
+            cache.put(key, value);
+        }
+    }
+
+    int size() {
+        return cache == null ? 0 : cache.size();
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.oilvegetable.pun_generator.service.impl;
+
+import com.github.oilvegetable.pun_generator.index.FuzzyPinyin;
+import com.github.oilvegetable.pun_generator.index.ItemStore;
+import com.github.oilvegetable.pun_generator.index.PhraseAutomaton;
+import com.github.oilvegetable.pun_generator.index.PostingIndex;
+import com.github.oilvegetable.pun_generator.index.SyllableTable;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一次构建出的完整索引，构建完成后不再修改。
+ * 重新加载时在后台构建新实例，再整体替换引用；请求开始时取一次引用，整个请求都读同一份索引。
+ */
+@Getter
+@AllArgsConstructor
+final class PunIndex {
+
+    static final PunIndex EMPTY = new PunIndex(Collections.emptyMap(), Collections.emptySet(), Collections.emptySet(), Collections.emptyMap(),
+            new SyllableTable(Collections.emptyList()), FuzzyPinyin.of(new SyllableTable(Collections.emptyList()), Collections.emptyList()), ItemStore.empty(), PostingIndex.empty(), PhraseAutomaton.empty(), new MatchCache<>(0, 0));
+
+    private final Map<String, List<String>> categoryMap;
+    private final Set<String> allTypes;
+    // 已加载的分类；懒加载时未加载的分类仍出现在 allTypes 中，但没有词条
+    private final Set<String> loadedTypes;
+    private final Map<String, Integer> typePriorityMap;
+    // 音节 -> 稠密 ID，构建完成后查询侧只读 (idOf)
+    private final SyllableTable syllableTable;
+    // 音节 -> 模糊音等价类，倒排表以等价类 ID 为键
+    private final FuzzyPinyin fuzzyPinyin;
+    // 按文本去重的列式词条存储，倒排表中的 ID 即其词条 ID
+    private final ItemStore itemStore;
+    private final PostingIndex postingIndex;
+    // 整句扫描用的读音序列自动机，由 itemStore 构建，随快照一起存取
+    private final PhraseAutomaton phraseAutomaton;
+    // 匹配结果缓存：按输入拼音 + 分类 + 顺序模式缓存，随索引一起替换，旧索引的结果不会被新请求读到
+    private final MatchCache<List<PunServiceImpl.MatchResult>> matchCache;
+
+    /**
+     * 共用同一份词条与倒排表、但不带匹配结果缓存的副本，预热时每次都走完整的匹配路径
+     */
+    PunIndex uncached() {
+        return new PunIndex(categoryMap, allTypes, loadedTypes, typePriorityMap, syllableTable, fuzzyPinyin,
+                itemStore, postingIndex, phraseAutomaton, new MatchCache<>(0, 0));
+    }
+}
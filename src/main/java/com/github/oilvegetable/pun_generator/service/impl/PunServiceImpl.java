@@ -1,56 +1,165 @@
 package com.github.oilvegetable.pun_generator.service.impl;
 
+import cn.hutool.core.io.resource.NoResourceException;
 import cn.hutool.core.io.resource.ResourceUtil;
+import cn.hutool.core.io.watch.SimpleWatcher;
+import cn.hutool.core.io.watch.WatchMonitor;
+import cn.hutool.core.io.watch.Watcher;
+import cn.hutool.core.io.watch.watchers.DelayWatcher;
 import cn.hutool.core.text.StrSplitter;
+import cn.hutool.core.util.IdUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONArray;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
 import com.github.oilvegetable.pun_generator.config.PunProperties;
+import com.github.oilvegetable.pun_generator.index.DictItem;
+import com.github.oilvegetable.pun_generator.index.FuzzyPinyin;
+import com.github.oilvegetable.pun_generator.index.IndexSnapshot;
+import com.github.oilvegetable.pun_generator.index.ItemStore;
+import com.github.oilvegetable.pun_generator.index.JsonRecordReader;
+import com.github.oilvegetable.pun_generator.index.PhraseAutomaton;
+import com.github.oilvegetable.pun_generator.index.PinyinTable;
+import com.github.oilvegetable.pun_generator.index.PostingIndex;
+import com.github.oilvegetable.pun_generator.index.SyllableTable;
+import com.github.oilvegetable.pun_generator.metrics.PunMetrics;
+import com.github.oilvegetable.pun_generator.metrics.SearchTrace;
 import com.github.oilvegetable.pun_generator.service.PunService;
+import com.github.oilvegetable.pun_generator.service.SearchBudget;
+import com.github.oilvegetable.pun_generator.service.SearchRejectedException;
+import com.github.oilvegetable.pun_generator.vo.DictStatus;
+import com.github.oilvegetable.pun_generator.vo.PunPage;
 import com.github.oilvegetable.pun_generator.vo.PunResult;
+import com.github.oilvegetable.pun_generator.vo.TypeaheadPage;
 import lombok.AllArgsConstructor;
 import lombok.Data;
-import net.sourceforge.pinyin4j.PinyinHelper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
 import java.util.*;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 
 @Service
 public class PunServiceImpl implements PunService {
 
     @Autowired
     private PunProperties punProperties;
+    @Autowired
+    private PunMetrics punMetrics;
 
-    private final Map<String, List<String>> categoryMap = new LinkedHashMap<>();
-    private final Map<String, Set<DictItem>> invertedIndex = new HashMap<>();
-    private final Set<String> allTypes = new LinkedHashSet<>();
-    private final Map<String, Integer> typePriorityMap = new HashMap<>();
+    // 字 -> 音节 ID 查找表，建索引与查询共用
+    private final PinyinTable pinyinTable = PinyinTable.getDefault();
 
-    // 预编译正则，优化性能，防止内存溢出
-    private static final Pattern TONE_PATTERN = Pattern.compile("\\d");
+    // 当前索引：重新加载时整体替换，请求只读取，不加锁
+    private volatile PunIndex index = PunIndex.EMPTY;
 
-    @Data
-    @AllArgsConstructor
-    private static class DictItem {
-        String text;
-        String type;
-        String extra;
-        int frequency;
-        List<Set<String>> pinyins;
-    }
+    // 后台重新加载：同一时间只允许一次构建
+    private final ExecutorService reloadExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "pun-reload");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean reloading = new AtomicBoolean();
+    private final AtomicBoolean reloadRequested = new AtomicBoolean();
+    // 懒加载中的分类 -> 加载完成 (新索引已替换) 时结束；同样在 reloadExecutor 上执行，与重新加载串行
+    private final Map<String, CompletableFuture<Void>> lazyLoads = new ConcurrentHashMap<>();
+    private WatchMonitor dictWatcher;
+
+    // 分页会话：sessionId -> 已合并的结果，翻页时无需重新计算
+    private final Map<String, SearchSession> pageSessions = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SearchSession> eldest) {
+            return size() > punProperties.getPageSessionSize();
+        }
+    });
+
+    // 边输入边搜索的会话：令牌 -> 上一次输入的候选计数与细算结果
+    private final Map<String, TypeaheadSession> typeaheadSessions = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TypeaheadSession> eldest) {
+            return size() > punProperties.getTypeaheadSessionSize();
+        }
+    });
+
+    // 流式生成的回调线程池：回调向客户端写数据，可能因客户端慢而阻塞，与细算线程分开
+    private final ExecutorService streamExecutor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "pun-stream");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // 大候选集的并行细算线程池
+    private ForkJoinPool scoringPool;
+
+    // 批量生成的线程池，限制同时处理的输入数
+    private ForkJoinPool batchPool;
+
+    // 重查询 (候选数达到 expensiveCandidates) 的细算许可，限制同时进行的重查询数
+    private Semaphore expensiveSearches;
+
+    // 歇后语词库的字段
+    private static final Set<String> XIEHOUYU_FIELDS = Set.of("riddle", "answer");
+
+    // 词库目录监听的子目录深度
+    private static final int WATCH_MAX_DEPTH = 4;
+
+    // 分数档位宽度：同一档位内的分数视为相同，再按词频排序
+    private static final int SCORE_BAND = 20;
+    // 命中一个字的得分：读音完全相同 / 仅模糊音相同
+    private static final int EXACT_HIT_SCORE = 10;
+    private static final int FUZZY_HIT_SCORE = 6;
+    // 有序匹配中与上一个命中字相邻时的加分
+    private static final int CONTIGUOUS_BONUS = 20;
+    // 无序匹配时字典字的占用标记，按线程复用 (细算在请求线程与 scoringPool 线程上进行)
+    private static final ThreadLocal<int[]> UNORDERED_SCRATCH = ThreadLocal.withInitial(() -> new int[32]);
+
+    // 结果排序 (全序)，保证 top-K 选取与完整排序的结果一致，分页游标稳定
+    private static final Comparator<MergedResult> RESULT_ORDER = Comparator
+            // 优先级1: 匹配字数 (越多越好)
+            .comparingInt(MergedResult::getMaxMatchCount).reversed()
+            // 优先级2: 分数档位 (越高越好)
+            .thenComparing(Comparator.<MergedResult>comparingInt(r -> r.getMaxScore() / SCORE_BAND).reversed())
+            // 优先级3: 词频 (越高越好)
+            .thenComparing(Comparator.<MergedResult>comparingInt(MergedResult::getMaxFrequency).reversed())
+            // 兜底: 按文本，保证顺序确定
+            .thenComparing(MergedResult::getFinalPun);
+
+    // 边输入边搜索时已细算、但不匹配的词条
+    private static final MatchResult NO_MATCH = new MatchResult(-1, -1, 0, 0, new int[0], new int[0]);
+
+    // 匹配结果按出现记录 ID (即加载顺序) 排列
+    private static final Comparator<MatchResult> MEMBER_ORDER = Comparator.comparingInt(MatchResult::getMember);
 
     @Data
     @AllArgsConstructor
-    private static class MatchResult {
-        String finalPun;
+    static class MatchResult {
+        // 词条 ID 及其在某个分类中的出现记录 ID (见 ItemStore)
+        int entry;
+        int member;
         int matchCount;
         int score;
-        List<Integer> indices;
+        // 命中的词条字下标 (升序) 及其对应的输入位置，与输入的具体汉字无关，可按拼音缓存
+        int[] indices;
+        int[] sources;
     }
 
     @Data
@@ -90,368 +199,1958 @@ public class PunServiceImpl implements PunService {
         }
     }
 
-    @PostConstruct
-    @Override
-    public void initData() {
-        System.out.println("正在根据配置文件构建索引...");
+    private static class SearchSession {
+        final long createdAt = System.currentTimeMillis();
+        // 会话对应的查询 (见 pageQueryKey)，游标只能用于同一查询的翻页
+        final String queryKey;
+        final Map<String, List<MergedResult>> merged;
+        // 完整结果计算时的预算，翻页沿用同一份结果，是否完整也随之沿用
+        private SearchBudget budget;
+        // 首页只选出了前 pageSize 条时不为 null：首次翻页时以翻页请求的预算完整计算一次
+        private Function<SearchBudget, Map<String, List<MergedResult>>> loader;
+        final Set<String> sortedTypes = new HashSet<>();
 
-        if (punProperties.getGroups() == null) {
-            System.err.println("未找到词库配置");
-            return;
+        SearchSession(String queryKey, Map<String, List<MergedResult>> merged, SearchBudget budget) {
+            this.queryKey = queryKey;
+            this.merged = merged;
+            this.budget = budget;
         }
 
-        // 1. 清理数据
-        categoryMap.clear();
-        invertedIndex.clear();
-        allTypes.clear();
-        typePriorityMap.clear();
+        SearchSession(String queryKey, Function<SearchBudget, Map<String, List<MergedResult>>> loader) {
+            this(queryKey, new HashMap<>(), null);
+            this.loader = loader;
+        }
 
-        // 2. 初始化优先级映射
-        List<String> orderConfig = punProperties.getSearchOrder();
-        if (orderConfig != null) {
-            for (int i = 0; i < orderConfig.size(); i++) {
-                typePriorityMap.put(orderConfig.get(i), i);
+        /**
+         * 首次翻页时对该分类完整排序一次，之后直接切片
+         */
+        synchronized List<MergedResult> sorted(String type, SearchBudget requestBudget) {
+            if (loader != null) {
+                merged.putAll(loader.apply(requestBudget));
+                budget = requestBudget;
+                loader = null;
             }
+            List<MergedResult> list = merged.getOrDefault(type, Collections.emptyList());
+            if (sortedTypes.add(type)) {
+                list.sort(RESULT_ORDER);
+            }
+            return list;
         }
 
-        // 3. 加载词库
-        for (PunProperties.GroupConfig group : punProperties.getGroups()) {
-            categoryMap.put(group.getName(), new ArrayList<>());
-            if (group.getDicts() == null) continue;
-
-            for (PunProperties.DictConfig dict : group.getDicts()) {
-                System.out.println("加载: " + dict.getName());
-                categoryMap.get(group.getName()).add(dict.getName());
-                allTypes.add(dict.getName());
-
-                if (dict.getLoaderType() == null) continue;
-                switch (dict.getLoaderType()) {
-                    case JSON_NORMAL: loadJsonNormal(dict); break;
-                    case JSON_XIEHOUYU: loadJsonXiehouyu(dict); break;
-                    case THUOCL: loadThuoclData(dict); break;
+        synchronized boolean isTruncated() {
+            return budget.isTruncated();
+        }
+    }
+
+    /**
+     * 边输入边搜索的会话：已计入的输入位置，以及候选词条 (升序) 各自命中的不同输入位置数与细算结果。
+     * 追加一个位置时，只有该位置读音的倒排表中的词条计数变化、需要重新细算，其余词条的结果不变
+     * (新位置与它们的任何字都不同音，有序与无序匹配都不会用到它)；删除末尾位置同理。
+     * 细算时最低匹配数取 1，结果不随输入变长而失效，使用时再按当前的最低匹配数过滤
+     */
+    private static class TypeaheadSession {
+        final PunIndex idx;
+        final List<String> searchTypes;
+        final boolean ignoreOrder;
+        final long typeMask;
+        volatile long touchedAt = System.currentTimeMillis();
+        // 已计入的每个输入位置的读音 ID
+        final List<short[]> positions = new ArrayList<>();
+        int[] ids = new int[0];
+        int[] hits = new int[0];
+        // null 表示计数变化后尚未重新细算，NO_MATCH 表示不匹配
+        MatchResult[] results = new MatchResult[0];
+        int size;
+
+        TypeaheadSession(PunIndex idx, List<String> searchTypes, boolean ignoreOrder) {
+            this.idx = idx;
+            this.searchTypes = searchTypes;
+            this.ignoreOrder = ignoreOrder;
+            this.typeMask = idx.getItemStore().typeMask(searchTypes);
+        }
+
+        boolean accepts(PunIndex idx, List<String> searchTypes, boolean ignoreOrder) {
+            return this.idx == idx && this.ignoreOrder == ignoreOrder && this.searchTypes.equals(searchTypes);
+        }
+
+        /**
+         * 将 positions 变为 inputPinyins：撤销公共前缀之后的位置，再计入新的位置
+         * @return 重新计入的位置数 (含撤销的)
+         */
+        int advance(List<short[]> inputPinyins) {
+            int common = 0;
+            while (common < positions.size() && common < inputPinyins.size()
+                    && Arrays.equals(positions.get(common), inputPinyins.get(common))) {
+                common++;
+            }
+            int changed = positions.size() - common + inputPinyins.size() - common;
+            while (positions.size() > common) {
+                update(positionItems(positions.remove(positions.size() - 1)), -1);
+            }
+            for (int i = common; i < inputPinyins.size(); i++) {
+                positions.add(inputPinyins.get(i));
+                update(positionItems(inputPinyins.get(i)), 1);
+            }
+            return changed;
+        }
+
+        /**
+         * 一个输入位置命中的所选分类的词条 (升序)
+         */
+        private int[] positionItems(short[] pinyins) {
+            int[] items = idx.getPostingIndex().union(idx.getFuzzyPinyin().isEnabled() ? idx.getFuzzyPinyin().toClasses(pinyins) : pinyins);
+            ItemStore store = idx.getItemStore();
+            int n = 0;
+            for (int item : items) {
+                if ((store.getTypeMask(item) & typeMask) != 0) items[n++] = item;
+            }
+            return Arrays.copyOf(items, n);
+        }
+
+        /**
+         * 有序归并：items 中词条的计数加 delta 并清除其细算结果，计数降为 0 的移除
+         */
+        private void update(int[] items, int delta) {
+            int capacity = delta > 0 ? size + items.length : size;
+            int[] newIds = new int[capacity];
+            int[] newHits = new int[capacity];
+            MatchResult[] newResults = new MatchResult[capacity];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+            while (i < size || j < items.length) {
+                if (j == items.length || (i < size && ids[i] < items[j])) {
+                    newIds[n] = ids[i];
+                    newHits[n] = hits[i];
+                    newResults[n++] = results[i++];
+                } else if (i == size || items[j] < ids[i]) {
+                    if (delta > 0) {
+                        newIds[n] = items[j];
+                        newHits[n++] = delta;
+                    }
+                    j++;
+                } else {
+                    if (hits[i] + delta > 0) {
+                        newIds[n] = ids[i];
+                        newHits[n++] = hits[i] + delta;
+                    }
+                    i++;
+                    j++;
                 }
             }
+            ids = newIds;
+            hits = newHits;
+            results = newResults;
+            size = n;
         }
-        System.out.println("初始化完成，共 " + allTypes.size() + " 个分类");
     }
 
-    @Override
-    public Map<String, List<String>> getCategoryMap() {
-        return categoryMap;
-    }
+    /**
+     * 批量生成时各输入共享的中间结果：每组读音的倒排表并集，同一批次内只计算一次
+     */
+    private static class BatchLookups {
+        final Map<String, int[]> positionItems = new ConcurrentHashMap<>();
 
-    @Override
-    public List<String> getAllTypesOrdered() {
-        List<String> sortedTypes = new ArrayList<>(allTypes);
-        sortedTypes.sort(Comparator.comparingInt(t -> typePriorityMap.getOrDefault(t, Integer.MAX_VALUE)));
-        return sortedTypes;
+        List<int[]> getPositionItems(List<short[]> inputPinyins, PostingIndex postingIndex) {
+            List<int[]> list = new ArrayList<>(inputPinyins.size());
+            for (short[] ids : inputPinyins) {
+                list.add(positionItems.computeIfAbsent(Arrays.toString(ids), k -> postingIndex.union(ids)));
+            }
+            return list;
+        }
     }
 
+    @PostConstruct
     @Override
-    public List<String> getDefaultSelectedTypes() {
-        return punProperties.getDefaultDictNames() != null ? punProperties.getDefaultDictNames() : new ArrayList<>();
+    public void initData() {
+        if (scoringPool == null) {
+            int parallelism = punProperties.getScoreParallelism() > 0
+                    ? punProperties.getScoreParallelism()
+                    : Runtime.getRuntime().availableProcessors();
+            scoringPool = new ForkJoinPool(parallelism);
+        }
+        if (batchPool == null) {
+            int parallelism = punProperties.getBatchParallelism() > 0
+                    ? punProperties.getBatchParallelism()
+                    : Runtime.getRuntime().availableProcessors();
+            batchPool = new ForkJoinPool(parallelism);
+        }
+        if (expensiveSearches == null) {
+            int permits = punProperties.getMaxExpensiveSearches() > 0
+                    ? punProperties.getMaxExpensiveSearches()
+                    : Runtime.getRuntime().availableProcessors();
+            expensiveSearches = new Semaphore(permits, true);
+        }
+        punMetrics.registerCacheSize(() -> index.getMatchCache().size());
+        rebuild(true);
+        startDictWatcher();
+        if (punProperties.getLazyLoad() == PunProperties.LazyLoad.BACKGROUND) {
+            loadLazily(pendingTypes(index, index.getAllTypes()));
+        }
     }
 
     @Override
-    public Map<String, List<PunResult>> generatePun(String inputWord, List<String> targetTypes, boolean ignoreOrder) {
-        Map<String, List<PunResult>> resultMap = new LinkedHashMap<>();
-        List<String> searchTypes = (targetTypes == null || targetTypes.isEmpty())
-                ? new ArrayList<>(allTypes)
-                : new ArrayList<>(targetTypes);
-
-        searchTypes.sort(Comparator.comparingInt(t -> typePriorityMap.getOrDefault(t, Integer.MAX_VALUE)));
+    public boolean reload() {
+        reloadRequested.set(true);
+        if (!reloading.compareAndSet(false, true)) {
+            // 已有构建在进行，结束后会再构建一次
+            return false;
+        }
+        reloadExecutor.execute(() -> {
+            do {
+                try {
+                    while (reloadRequested.getAndSet(false)) {
+                        // 词库文件可能已修改而配置未变，重新加载时不读快照
+                        rebuild(false);
+                    }
+                } catch (Exception e) {
+                    System.err.println("重新加载失败，继续使用旧索引: " + e.getMessage());
+                } finally {
+                    reloading.set(false);
+                }
+                // 防止在退出循环与释放标记之间到达的请求丢失
+            } while (reloadRequested.get() && reloading.compareAndSet(false, true));
+        });
+        return true;
+    }
 
-        for (String type : searchTypes) {
-            resultMap.putIfAbsent(type, new ArrayList<>());
+    @PreDestroy
+    public void destroy() {
+        if (dictWatcher != null) {
+            dictWatcher.close();
+        }
+        reloadExecutor.shutdownNow();
+        streamExecutor.shutdownNow();
+        if (scoringPool != null) {
+            scoringPool.shutdown();
         }
+        if (batchPool != null) {
+            batchPool.shutdown();
+        }
+    }
 
-        if (inputWord == null || inputWord.isEmpty()) return resultMap;
+    /**
+     * 构建完整的新索引后整体替换，构建期间请求继续读取旧索引。
+     * 懒加载时只构建默认勾选及此前已加载的分类
+     */
+    private synchronized void rebuild(boolean useSnapshot) {
+        Set<String> dictNames = null;
+        if (punProperties.getLazyLoad() != PunProperties.LazyLoad.OFF) {
+            dictNames = new HashSet<>(getDefaultSelectedTypes());
+            dictNames.addAll(index.getLoadedTypes());
+        }
+        publish(buildIndex(useSnapshot, dictNames, null));
+    }
 
-        // 获取多音字组合
-        List<Set<String>> inputPinyins = getStringPinyins(inputWord);
-        if (inputPinyins.isEmpty()) return resultMap;
+    private void publish(PunIndex built) {
+        if (built == null) return;
+        index = built;
+        // 旧索引的边输入边搜索会话不会再被沿用，及时移除，避免闲置会话让旧索引无法回收
+        synchronized (typeaheadSessions) {
+            typeaheadSessions.values().removeIf(session -> session.idx != built);
+        }
+        System.out.println("初始化完成，共 " + built.getAllTypes().size() + " 个分类 (已加载 " + built.getLoadedTypes().size() + " 个), "
+                + built.getItemStore().getMemberCount() + " 个词条 (去重后 " + built.getItemStore().getEntryCount() + " 个)");
+    }
 
-        // 1. 确定最低匹配数
-        // 比如输入"已生一世" (4字), 配置min=2, 则limit=2
-        // 比如输入"啊" (1字), 配置min=2, 则limit=1 (取最小值)
-        int minLimit = Math.min(inputPinyins.size(), punProperties.getMinMatchCount());
+    /**
+     * 在后台加载尚未加载的分类，已在加载中的分类共用同一任务
+     *
+     * @return 这些分类全部加载完成时结束
+     */
+    private CompletableFuture<Void> loadLazily(Collection<String> types) {
+        List<String> toStart = new ArrayList<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (String type : types) {
+            futures.add(lazyLoads.computeIfAbsent(type, k -> {
+                toStart.add(k);
+                return new CompletableFuture<>();
+            }));
+        }
+        if (!toStart.isEmpty()) {
+            reloadExecutor.execute(() -> extendIndex(toStart));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
 
-        // 2. 候选集筛选 (使用Set去重)
-        Set<DictItem> candidates = new HashSet<>();
-        for (Set<String> pinyinSet : inputPinyins) {
-            for (String py : pinyinSet) {
-                if (invertedIndex.containsKey(py)) {
-                    Set<DictItem> items = invertedIndex.get(py);
-                    for (DictItem item : items) {
-                        // 类型过滤
-                        if (!resultMap.containsKey(item.getType())) continue;
-                        // 长度剪枝：如果词条拼音数 < minLimit，绝对无法匹配成功，直接丢弃
-                        if (item.getPinyins().size() < minLimit) continue;
-
-                        candidates.add(item);
-                    }
-                }
+    /**
+     * 在当前索引的基础上追加词库：已加载的词条直接从存储中还原，只解析新增的词库
+     */
+    private void extendIndex(List<String> types) {
+        try {
+            synchronized (this) {
+                PunIndex current = index;
+                Set<String> dictNames = new HashSet<>(current.getLoadedTypes());
+                dictNames.addAll(types);
+                publish(buildIndex(false, dictNames, current));
             }
+            types.forEach(type -> lazyLoads.remove(type).complete(null));
+        } catch (Exception e) {
+            System.err.println("懒加载词库失败: " + types + ", " + e.getMessage());
+            // 移除后下次请求会重新尝试
+            types.forEach(type -> lazyLoads.remove(type).completeExceptionally(e));
         }
+    }
 
-        // 3. 细算与合并
-        Map<String, Map<String, MergedResult>> tempGroupedMap = new HashMap<>();
-        for (String type : searchTypes) {
-            tempGroupedMap.put(type, new HashMap<>());
+    /**
+     * 所给分类中已配置但尚未加载的分类
+     */
+    private List<String> pendingTypes(PunIndex idx, Collection<String> types) {
+        List<String> pending = new ArrayList<>();
+        for (String type : types) {
+            if (idx.getAllTypes().contains(type) && !idx.getLoadedTypes().contains(type) && !isRemote(type)) {
+                pending.add(type);
+            }
         }
+        return pending;
+    }
 
-        for (DictItem item : candidates) {
-            MatchResult match;
-            if (ignoreOrder) {
-                match = calculateUnorderedMatch(inputWord, inputPinyins, item, minLimit);
-            } else {
-                match = calculateOrderedMatch(inputWord, inputPinyins, item, minLimit);
-            }
-
-            if (match != null) {
-                Map<String, MergedResult> group = tempGroupedMap.get(item.getType());
-                if (group != null) {
-                    String fullPunDisplay = match.getFinalPun();
-                    String fullOriginText = item.getText();
-                    List<Integer> finalIndices = new ArrayList<>(match.getIndices());
-
-                    if ("歇后语".equals(item.getType()) && StrUtil.isNotBlank(item.getExtra())) {
-                        String prefix = item.getExtra() + "——";
-                        // 歇后语也需要把前缀加回去
-                        fullPunDisplay = prefix + match.getFinalPun();
-                        fullOriginText = prefix + item.getText();
-                        int offset = prefix.length();
-                        finalIndices.replaceAll(i -> i + offset);
-                    }
-
-                    if (group.containsKey(fullPunDisplay)) {
-                        group.get(fullPunDisplay).addOrigin(fullOriginText, match.getMatchCount(), match.getScore(), item.getFrequency());
-                    } else {
-                        // 【调用修复】参数顺序严格对应构造函数
-                        group.put(fullPunDisplay, new MergedResult(
-                                fullPunDisplay,     // String
-                                finalIndices,       // List
-                                match.getMatchCount(), // int
-                                match.getScore(),      // int
-                                item.getFrequency(),   // int
-                                fullOriginText         // String
-                        ));
-                    }
-                }
+    /**
+     * 分片部署时由其他实例负责的词库：不在 shardDicts 中，或已分配给 shards 中的某个分片
+     */
+    private boolean isRemote(String type) {
+        List<String> shardDicts = punProperties.getShardDicts();
+        if (shardDicts != null && !shardDicts.isEmpty() && !shardDicts.contains(type)) return true;
+        if (punProperties.getShards() != null) {
+            for (PunProperties.ShardConfig shard : punProperties.getShards()) {
+                if (shard.getDicts() != null && shard.getDicts().contains(type)) return true;
             }
         }
+        return false;
+    }
 
-        // 4. 排序
-        for (String type : searchTypes) {
-            Map<String, MergedResult> punMap = tempGroupedMap.get(type);
-            if (punMap == null || punMap.isEmpty()) continue;
-
-            List<MergedResult> list = new ArrayList<>(punMap.values());
-            list.sort((r1, r2) -> {
-                // 优先级1: 匹配字数 (越多越好)
-                if (r1.getMaxMatchCount() != r2.getMaxMatchCount()) {
-                    return r2.getMaxMatchCount() - r1.getMaxMatchCount();
-                }
-                // 优先级2: 分数 (越高越好)
-                if (Math.abs(r1.getMaxScore() - r2.getMaxScore()) > 10) {
-                    return r2.getMaxScore() - r1.getMaxScore();
-                }
-                // 优先级3: 词频 (越高越好)
-                return r2.getMaxFrequency() - r1.getMaxFrequency();
-            });
+    /**
+     * 没有请求预算的调用 (批量、整句扫描、边输入边搜索) 最多等待 searchTimeoutMs，超时后只搜索已加载的分类
+     */
+    private PunIndex indexFor(List<String> targetTypes) {
+        return indexFor(targetTypes, SearchBudget.of(punProperties.getSearchTimeoutMs(), 0));
+    }
 
-            // 不再 limit(20)，全部返回给前端分页
-            List<PunResult> resultList = list.stream()
-                    .map(MergedResult::toPunResult)
-                    .collect(Collectors.toList());
-            resultMap.put(type, resultList);
+    /**
+     * 请求使用的索引：懒加载时若指定了尚未加载的分类，在剩余的时间预算内等待其加载完成；
+     * 超时或加载失败时只搜索已加载的分类，并将 budget 标记为 truncated。
+     * 未指定分类 (全部分类) 时不触发加载，只搜索已加载的分类
+     */
+    private PunIndex indexFor(List<String> targetTypes, SearchBudget budget) {
+        PunIndex idx = index;
+        if (punProperties.getLazyLoad() == PunProperties.LazyLoad.OFF || targetTypes == null || targetTypes.isEmpty()) {
+            return idx;
         }
-        return resultMap;
+        List<String> pending = pendingTypes(idx, targetTypes);
+        if (pending.isEmpty()) return idx;
+        CompletableFuture<Void> loading = loadLazily(pending);
+        try {
+            if (budget.hasDeadline()) {
+                loading.get(budget.remainingMillis(), TimeUnit.MILLISECONDS);
+            } else {
+                loading.get();
+            }
+        } catch (TimeoutException | ExecutionException e) {
+            // 加载仍在后台进行 (或已失败)，本次使用已有的分类继续
+            budget.markTruncated();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            budget.markTruncated();
+        }
+        return index;
     }
 
-    // ----------------- 核心算法区 -----------------
-
     /**
-     * 有序匹配 (支持跳字匹配，替换字符)
+     * @param dictNames 只加载这些分类的词库，null 表示全部；只有加载全部词库时才读写快照
+     * @param base      非空时在其已加载的词条基础上追加，不重新解析这些词库
      */
-    private MatchResult calculateOrderedMatch(String inputWord, List<Set<String>> inputPinyins, DictItem item, int minLimit) {
-        List<Set<String>> dictPinyins = item.getPinyins();
-        MatchResult bestMatch = null;
+    private PunIndex buildIndex(boolean useSnapshot, Set<String> dictNames, PunIndex base) {
+        System.out.println("正在根据配置文件构建索引...");
 
-        for (int i = 0; i < inputPinyins.size(); i++) {
-            List<Integer> currentIndices = new ArrayList<>();
-            Map<Integer, Character> replacementMap = new HashMap<>();
+        if (punProperties.getGroups() == null) {
+            System.err.println("未找到词库配置");
+            return null;
+        }
 
-            int currentDictIdx = 0;
-            int matchCount = 0;
-            int score = 0;
+        // 1. 初始化优先级映射
+        Map<String, Integer> typePriorityMap = new HashMap<>();
+        List<String> orderConfig = punProperties.getSearchOrder();
+        if (orderConfig != null) {
+            for (int i = 0; i < orderConfig.size(); i++) {
+                typePriorityMap.put(orderConfig.get(i), i);
+            }
+        }
 
-            for (int j = i; j < inputPinyins.size(); j++) {
-                Set<String> inPy = inputPinyins.get(j);
-                int foundAt = -1;
-                for (int k = currentDictIdx; k < dictPinyins.size(); k++) {
-                    if (!Collections.disjoint(dictPinyins.get(k), inPy)) {
-                        foundAt = k;
-                        break;
+        // 2. 注册分类
+        Map<String, List<String>> categoryMap = new LinkedHashMap<>();
+        Set<String> allTypes = new LinkedHashSet<>();
+        Set<String> loadedTypes = new LinkedHashSet<>();
+        List<PunProperties.DictConfig> dictsToLoad = new ArrayList<>();
+        boolean complete = true;
+        boolean remote = false;
+        for (PunProperties.GroupConfig group : punProperties.getGroups()) {
+            List<String> groupDicts = new ArrayList<>();
+            if (group.getDicts() != null) {
+                for (PunProperties.DictConfig dict : group.getDicts()) {
+                    groupDicts.add(dict.getName());
+                    allTypes.add(dict.getName());
+                    if (dict.getLoaderType() != null && isRemote(dict.getName())) {
+                        // 由其他分片负责，不加载也不懒加载
+                        remote = true;
+                        complete = false;
+                        continue;
+                    }
+                    if (dict.getLoaderType() != null && dictNames != null && !dictNames.contains(dict.getName())) {
+                        complete = false;
+                        continue;
+                    }
+                    loadedTypes.add(dict.getName());
+                    if (dict.getLoaderType() != null && (base == null || !base.getLoadedTypes().contains(dict.getName()))) {
+                        dictsToLoad.add(dict);
                     }
                 }
+            }
+            categoryMap.put(group.getName(), Collections.unmodifiableList(groupDicts));
+        }
 
-                if (foundAt != -1) {
-                    matchCount++;
-                    currentIndices.add(foundAt);
-                    // 记录替换：字典第 foundAt 个字 -> 输入的第 j 个字
-                    replacementMap.put(foundAt, inputWord.charAt(j));
+        // 3. 优先从快照加载，快照不存在或过期时再解析词库；快照总是包含全部词库，分片部署时不使用
+        long configChecksum = IndexSnapshot.checksum(punProperties);
+        IndexSnapshot snapshot = useSnapshot && !remote ? readSnapshot(configChecksum) : null;
+        if (snapshot != null) {
+            loadedTypes = allTypes;
+        }
 
-                    score += 10;
-                    if (currentIndices.size() > 1 && foundAt == currentIndices.get(currentIndices.size() - 2) + 1) {
-                        score += 20; // 连贯加分
-                    }
-                    currentDictIdx = foundAt + 1;
+        // 4. 并行加载词库，再按配置顺序合并，保证词条 ID 顺序确定
+        if (snapshot == null) {
+            long start = System.currentTimeMillis();
+            SyllableTable syllableTable = pinyinTable.getSyllableTable();
+            FuzzyPinyin fuzzyPinyin = FuzzyPinyin.of(syllableTable, punProperties.getFuzzyRules());
+            List<List<DictItem>> partials = new ArrayList<>();
+            if (base != null) {
+                ItemStore baseStore = base.getItemStore();
+                List<DictItem> baseItems = new ArrayList<>(baseStore.getMemberCount());
+                for (int m = 0; m < baseStore.getMemberCount(); m++) {
+                    baseItems.add(baseStore.toItem(m));
                 }
+                partials.add(baseItems);
             }
-
-            if (matchCount >= minLimit) {
-                if (bestMatch == null || matchCount > bestMatch.getMatchCount() || (matchCount == bestMatch.getMatchCount() && score > bestMatch.getScore())) {
-                    String finalPun = constructPlainString(item.getText(), replacementMap);
-                    bestMatch = new MatchResult(finalPun, matchCount, score, new ArrayList<>(currentIndices));
+            AtomicBoolean loadFailed = new AtomicBoolean();
+            partials.addAll(loadDictsInParallel(dictsToLoad, loadFailed));
+            // 同一文本只存一份，倒排表以去重后的词条 ID 为值、模糊音等价类 (未配置规则时即音节 ID) 为键
+            ItemStore.Builder storeBuilder = new ItemStore.Builder();
+            PostingIndex.Builder indexBuilder = new PostingIndex.Builder();
+            for (List<DictItem> partial : partials) {
+                for (DictItem item : partial) {
+                    int entryCount = storeBuilder.getEntryCount();
+                    if (storeBuilder.add(item) == entryCount) {
+                        indexBuilder.add(entryCount, fuzzyPinyin.toClasses(item.getPinyins()));
+                    }
                 }
             }
+            ItemStore itemStore = storeBuilder.build();
+            snapshot = new IndexSnapshot(syllableTable, itemStore, indexBuilder.build(fuzzyPinyin.getClassCount()),
+                    PhraseAutomaton.build(itemStore, fuzzyPinyin));
+            System.out.println("词库加载完成，耗时 " + (System.currentTimeMillis() - start) + "ms");
+            // 有词库解析失败时不写快照，否则之后的启动会一直使用缺失该词库的索引 (文件不存在的词库已跳过，不算失败)
+            if (complete && !loadFailed.get()) {
+                writeSnapshot(snapshot, configChecksum);
+            }
         }
-        return bestMatch;
+
+        return new PunIndex(
+                Collections.unmodifiableMap(categoryMap),
+                Collections.unmodifiableSet(allTypes),
+                Collections.unmodifiableSet(loadedTypes),
+                Collections.unmodifiableMap(typePriorityMap),
+                snapshot.getSyllableTable(),
+                FuzzyPinyin.of(snapshot.getSyllableTable(), punProperties.getFuzzyRules()),
+                snapshot.getItemStore(),
+                snapshot.getPostingIndex(),
+                snapshot.getPhraseAutomaton(),
+                new MatchCache<>(punProperties.getCacheSize(), punProperties.getCacheTtlSeconds() * 1000L, punMetrics));
     }
 
     /**
-     * 无序匹配 (贪心算法，替换字符)
+     * 监听词库目录，文件变化 (合并一段时间内的多次变化) 后在后台重新加载
      */
-    private MatchResult calculateUnorderedMatch(String inputWord, List<Set<String>> inputPinyins, DictItem item, int minLimit) {
-        List<Set<String>> dictPinyins = item.getPinyins();
-        List<Integer> resultIndices = new ArrayList<>();
-        Map<Integer, Character> replacementMap = new HashMap<>();
-        boolean[] usedDict = new boolean[dictPinyins.size()];
-        int matchCount = 0;
-        int score = 0;
+    private void startDictWatcher() {
+        if (dictWatcher != null || StrUtil.isBlank(punProperties.getWatchDir())) return;
+        Path dir = Paths.get(punProperties.getWatchDir());
+        if (!Files.isDirectory(dir)) {
+            System.err.println("词库监听目录不存在: " + dir);
+            return;
+        }
+        Watcher onChange = new SimpleWatcher() {
+            @Override
+            public void onCreate(WatchEvent<?> event, Path currentPath) {
+                onDictChanged(currentPath.resolve(event.context().toString()));
+            }
 
-        for (int j = 0; j < inputPinyins.size(); j++) {
-            Set<String> inPy = inputPinyins.get(j);
-            for (int k = 0; k < dictPinyins.size(); k++) {
-                if (!usedDict[k] && !Collections.disjoint(dictPinyins.get(k), inPy)) {
-                    usedDict[k] = true;
-                    resultIndices.add(k);
-                    replacementMap.put(k, inputWord.charAt(j));
-                    matchCount++;
-                    score += 10;
-                    break;
-                }
+            @Override
+            public void onModify(WatchEvent<?> event, Path currentPath) {
+                onDictChanged(currentPath.resolve(event.context().toString()));
             }
-        }
 
-        if (matchCount >= minLimit) {
-            Collections.sort(resultIndices);
-            String finalPun = constructPlainString(item.getText(), replacementMap);
-            return new MatchResult(finalPun, matchCount, score, resultIndices);
-        }
-        return null;
+            @Override
+            public void onDelete(WatchEvent<?> event, Path currentPath) {
+                onDictChanged(currentPath.resolve(event.context().toString()));
+            }
+        };
+        dictWatcher = WatchMonitor.createAll(dir, new DelayWatcher(onChange, punProperties.getWatchDelayMs()));
+        dictWatcher.setMaxDepth(WATCH_MAX_DEPTH);
+        dictWatcher.setDaemon(true);
+        dictWatcher.start();
+        System.out.println("监听词库目录: " + dir.toAbsolutePath());
+    }
+
+    private void onDictChanged(Path file) {
+        System.out.println("词库文件变化，后台重新加载: " + file);
+        reload();
     }
 
     /**
-     * 字符串替换工具：将 itemText 中被匹配的字替换为 input 中的字
+     * 每个词库在独立任务中解析并转换拼音，结果按传入顺序返回；
+     * 解析或读取失败的词库不保留任何词条 (不留读到一半的部分)，并设置 failed，调用方据此不写快照
      */
-    private String constructPlainString(String originText, Map<Integer, Character> replacementMap) {
-        if (replacementMap == null || replacementMap.isEmpty()) {
-            return originText;
-        }
-        StringBuilder sb = new StringBuilder(originText);
-        for (Map.Entry<Integer, Character> entry : replacementMap.entrySet()) {
-            int index = entry.getKey();
-            char newChar = entry.getValue();
-            if (index >= 0 && index < sb.length()) {
-                sb.setCharAt(index, newChar);
+    private List<List<DictItem>> loadDictsInParallel(List<PunProperties.DictConfig> dicts, AtomicBoolean failed) {
+        int parallelism = punProperties.getLoadParallelism() > 0
+                ? punProperties.getLoadParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(parallelism, dicts.size())));
+        try {
+            List<CompletableFuture<List<DictItem>>> futures = new ArrayList<>();
+            for (PunProperties.DictConfig dict : dicts) {
+                futures.add(CompletableFuture.supplyAsync(() -> loadDict(dict), pool));
+            }
+            List<List<DictItem>> partials = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    partials.add(futures.get(i).join());
+                } catch (CompletionException e) {
+                    System.err.println("Load Error: " + dicts.get(i).getPath() + ", " + e.getCause());
+                    failed.set(true);
+                    partials.add(Collections.emptyList());
+                }
             }
+            return partials;
+        } finally {
+            pool.shutdown();
         }
-        return sb.toString();
     }
 
-    // ----------------- 加载与工具区 -----------------
-
-    private void loadJsonNormal(PunProperties.DictConfig config) {
+    List<DictItem> loadDict(PunProperties.DictConfig dict) {
+        long start = System.currentTimeMillis();
+        List<DictItem> target = new ArrayList<>();
         try {
-            String jsonStr = ResourceUtil.readUtf8Str(config.getPath());
-            if (jsonStr == null) return;
-            JSONArray array = JSONUtil.parseArray(jsonStr);
-            for (Object obj : array) {
-                JSONObject json = (JSONObject) obj;
-                String text = json.getStr(config.getKeyField());
-                String extra = config.getExtraField() != null ? json.getStr(config.getExtraField()) : "";
-                if (text != null && !text.trim().isEmpty()) {
-                    addToIndex(text, config.getName(), extra, config.getDefaultFreq());
-                }
+            switch (dict.getLoaderType()) {
+                case JSON_NORMAL: loadJsonNormal(dict, target); break;
+                case JSON_XIEHOUYU: loadJsonXiehouyu(dict, target); break;
+                case THUOCL: loadThuoclData(dict, target); break;
             }
-        } catch (Exception e) { System.err.println("Load Error: " + config.getPath()); }
+        } catch (NoResourceException e) {
+            // 词库文件不存在：跳过该词库，其余词库照常建索引并写快照
+            System.err.println("词库文件不存在，跳过: " + dict.getPath());
+            return Collections.emptyList();
+        } catch (Exception e) {
+            // 流式解析中途出错时丢弃已读到的部分
+            throw new IllegalStateException("词库加载失败: " + dict.getPath(), e);
+        }
+        System.out.println("加载: " + dict.getName() + ", " + target.size() + " 条, 耗时 " + (System.currentTimeMillis() - start) + "ms");
+        return target;
     }
 
-    private void loadJsonXiehouyu(PunProperties.DictConfig config) {
+    private IndexSnapshot readSnapshot(long configChecksum) {
+        if (StrUtil.isBlank(punProperties.getSnapshotPath())) return null;
+        Path path = Paths.get(punProperties.getSnapshotPath());
         try {
-            String jsonStr = ResourceUtil.readUtf8Str(config.getPath());
-            JSONArray array = JSONUtil.parseArray(jsonStr);
-            for (Object obj : array) {
-                JSONObject json = (JSONObject) obj;
-                String riddle = json.getStr("riddle");
-                String answer = json.getStr("answer");
-                if (StrUtil.isNotBlank(riddle) && StrUtil.isNotBlank(answer)) {
-                    addToIndex(answer, config.getName(), riddle, config.getDefaultFreq());
-                }
+            long start = System.currentTimeMillis();
+            IndexSnapshot snapshot = IndexSnapshot.read(path, configChecksum);
+            // 音节 ID 来自拼音表，拼音表变化后旧快照的 ID 不再对应
+            if (snapshot != null && !snapshot.getSyllableTable().getSyllables().equals(pinyinTable.getSyllableTable().getSyllables())) {
+                snapshot = null;
+            }
+            if (snapshot == null) {
+                System.out.println("索引快照不存在或已过期，重新构建: " + path);
+            } else {
+                System.out.println("从快照加载索引: " + path + ", 耗时 " + (System.currentTimeMillis() - start) + "ms");
             }
-        } catch (Exception e) { System.err.println("Load Error: " + config.getPath()); }
+            return snapshot;
+        } catch (Exception e) {
+            System.err.println("索引快照读取失败，重新构建: " + path + ", " + e.getMessage());
+            return null;
+        }
     }
 
-    private void loadThuoclData(PunProperties.DictConfig config) {
+    private void writeSnapshot(IndexSnapshot snapshot, long configChecksum) {
+        if (StrUtil.isBlank(punProperties.getSnapshotPath())) return;
+        Path path = Paths.get(punProperties.getSnapshotPath());
         try {
-            String content = ResourceUtil.readUtf8Str(config.getPath());
-            if (content == null) return;
-            List<String> lines = StrSplitter.split(content, '\n', true, true);
-            for (String line : lines) {
-                List<String> parts = StrSplitter.split(line, "\t", true, true);
-                if (parts.size() < 2) continue;
-                String text = parts.get(0);
-                if (text.length() < 2) continue;
-                try {
-                    int frequency = Integer.parseInt(parts.get(1));
-                    addToIndex(text, config.getName(), "", frequency);
-                } catch (NumberFormatException e) { /* ignore */ }
-            }
-        } catch (Exception e) { System.err.println("Load Error: " + config.getPath()); }
+            snapshot.write(path, configChecksum);
+            System.out.println("索引快照已写入: " + path);
+        } catch (Exception e) {
+            System.err.println("索引快照写入失败: " + path + ", " + e.getMessage());
+        }
     }
 
-    private void addToIndex(String text, String type, String extra, int frequency) {
-        List<Set<String>> pinyinsList = getStringPinyins(text);
-        if (pinyinsList.isEmpty()) return;
+    /**
+     * 当前索引，供基准测试取得与请求相同的索引
+     */
+    PunIndex currentIndex() {
+        return index;
+    }
+
+    @Override
+    public Map<String, Long> getCacheStats() {
+        Map<String, Long> stats = punMetrics.getCacheStats();
+        stats.put("size", (long) index.getMatchCache().size());
+        return stats;
+    }
+
+    @Override
+    public Map<String, List<String>> getCategoryMap() {
+        return index.getCategoryMap();
+    }
 
-        DictItem item = new DictItem(text, type, extra, frequency, pinyinsList);
-        for (Set<String> pinyinSet : pinyinsList) {
-            for (String py : pinyinSet) {
-                invertedIndex.computeIfAbsent(py, k -> new HashSet<>()).add(item);
+    @Override
+    public Map<String, List<DictStatus>> getCategoryStatus() {
+        PunIndex idx = index;
+        Map<String, List<DictStatus>> statusMap = new LinkedHashMap<>();
+        idx.getCategoryMap().forEach((group, names) -> {
+            List<DictStatus> statuses = new ArrayList<>();
+            for (String name : names) {
+                String status = idx.getLoadedTypes().contains(name) ? "ready"
+                        : isRemote(name) ? "remote" : lazyLoads.containsKey(name) ? "loading" : "pending";
+                statuses.add(new DictStatus(name, status, idx.getItemStore().memberCount(name)));
             }
+            statusMap.put(group, statuses);
+        });
+        return statusMap;
+    }
+
+    @Override
+    public List<String> getAllTypesOrdered() {
+        PunIndex idx = index;
+        List<String> sortedTypes = new ArrayList<>(idx.getAllTypes());
+        sortedTypes.sort(Comparator.comparingInt(t -> idx.getTypePriorityMap().getOrDefault(t, Integer.MAX_VALUE)));
+        return sortedTypes;
+    }
+
+    @Override
+    public List<String> getDefaultSelectedTypes() {
+        return punProperties.getDefaultDictNames() != null ? punProperties.getDefaultDictNames() : new ArrayList<>();
+    }
+
+    @Override
+    public Map<String, List<PunResult>> generatePun(String inputWord, List<String> targetTypes, boolean ignoreOrder, SearchBudget budget) {
+        SearchTrace trace = new SearchTrace(inputWord, targetTypes, ignoreOrder);
+        Map<String, List<MergedResult>> merged = search(indexFor(targetTypes, budget), inputWord, targetTypes, ignoreOrder, trace, null, 0, budget);
+
+        // 不再 limit(20)，全部返回给前端分页
+        Map<String, List<PunResult>> resultMap = sortResults(merged, 0, trace);
+        trace.setTruncated(budget.isTruncated());
+        punMetrics.record(trace);
+        return resultMap;
+    }
+
+    /**
+     * 预热一次查询：在全部已加载的分类上走完整匹配 + 排序与首页 top-K 两条路径，
+     * 不读写匹配结果缓存、不记录指标
+     *
+     * @param idx 当前索引的无缓存副本 (PunIndex.uncached)
+     */
+    void warmUp(PunIndex idx, String inputWord, boolean ignoreOrder) {
+        SearchTrace trace = new SearchTrace(inputWord, null, ignoreOrder);
+        sortResults(search(idx, inputWord, null, ignoreOrder, trace, null, 0, SearchBudget.unlimited()), 0, trace);
+        int pageSize = punProperties.getInitialDisplaySize();
+        sortResults(search(idx, inputWord, null, ignoreOrder, trace, null, pageSize, SearchBudget.unlimited()), pageSize, trace);
+    }
+
+    @Override
+    public Map<String, Map<String, List<PunResult>>> generatePunBatch(List<String> inputWords, List<String> targetTypes, boolean ignoreOrder, int limit) {
+        PunIndex idx = indexFor(targetTypes);
+        BatchLookups lookups = new BatchLookups();
+        // 重复的输入只计算一次，结果按输入顺序返回
+        List<String> words = new ArrayList<>();
+        for (String word : new LinkedHashSet<>(inputWords)) {
+            if (word != null) words.add(word);
+        }
+
+        List<CompletableFuture<Map<String, List<PunResult>>>> futures = new ArrayList<>(words.size());
+        for (String word : words) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                SearchTrace trace = new SearchTrace(word, targetTypes, ignoreOrder);
+                Map<String, List<PunResult>> resultMap = sortResults(search(idx, word, targetTypes, ignoreOrder, trace, lookups, limit, SearchBudget.unlimited()), limit, trace);
+                punMetrics.record(trace);
+                return resultMap;
+            }, batchPool));
+        }
+
+        Map<String, Map<String, List<PunResult>>> results = new LinkedHashMap<>();
+        for (int i = 0; i < words.size(); i++) {
+            results.put(words.get(i), futures.get(i).join());
         }
+        return results;
     }
 
-    private List<Set<String>> getStringPinyins(String str) {
-        List<Set<String>> list = new ArrayList<>();
-        for (char c : str.toCharArray()) {
-            Set<String> pinyinSet = new HashSet<>();
-            String[] pinyins = null;
-            try {
-                pinyins = PinyinHelper.toHanyuPinyinStringArray(c);
-            } catch (Exception e) {}
-
-            if (pinyins != null && pinyins.length > 0) {
-                for (String py : pinyins) {
-                    // 优化：intern() 复用字符串，降低内存
-                    String clearPy = TONE_PATTERN.matcher(py).replaceAll("").intern();
-                    pinyinSet.add(clearPy);
-                }
+    /**
+     * 每个分类排序后转为返回结果，limit > 0 时只保留前 limit 条
+     */
+    private Map<String, List<PunResult>> sortResults(Map<String, List<MergedResult>> merged, int limit, SearchTrace trace) {
+        Map<String, List<PunResult>> resultMap = new LinkedHashMap<>();
+        for (Map.Entry<String, List<MergedResult>> entry : merged.entrySet()) {
+            List<MergedResult> list = entry.getValue();
+            if (limit > 0) {
+                resultMap.put(entry.getKey(), toPunResults(topK(list, limit)));
+            } else {
+                list.sort(RESULT_ORDER);
+                resultMap.put(entry.getKey(), toPunResults(list));
             }
-            if (!pinyinSet.isEmpty()) {
-                list.add(pinyinSet);
+            trace.addResultCount(entry.getKey(), list.size());
+        }
+        trace.mark(SearchTrace.Stage.SORT);
+        return resultMap;
+    }
+
+    @Override
+    public PunPage generatePunPage(String inputWord, List<String> targetTypes, boolean ignoreOrder, int limit, String cursor, SearchBudget budget) {
+        int pageSize = Math.max(1, limit);
+        PageCursor pageCursor = PageCursor.decode(cursor);
+
+        // 翻页：从会话中取下一页，会话过期或游标属于其他查询时重新计算
+        String queryKey = pageQueryKey(inputWord, targetTypes, ignoreOrder);
+        if (pageCursor != null) {
+            SearchSession session = getPageSession(pageCursor.sessionId);
+            String sessionId = pageCursor.sessionId;
+            if (session == null || !session.queryKey.equals(queryKey)) {
+                session = new SearchSession(queryKey, search(indexFor(targetTypes, budget), inputWord, targetTypes, ignoreOrder, new SearchTrace(inputWord, targetTypes, ignoreOrder), null, 0, budget), budget);
+                sessionId = putPageSession(session);
+            }
+            List<MergedResult> sorted = session.sorted(pageCursor.type, budget);
+            int from = Math.min(pageCursor.offset, sorted.size());
+            int to = Math.min(from + pageSize, sorted.size());
+
+            PunPage page = new PunPage(new LinkedHashMap<>(), new LinkedHashMap<>(), new LinkedHashMap<>(), session.isTruncated());
+            page.getResults().put(pageCursor.type, toPunResults(sorted.subList(from, to)));
+            page.getTotals().put(pageCursor.type, sorted.size());
+            page.getCursors().put(pageCursor.type, to < sorted.size() ? new PageCursor(sessionId, pageCursor.type, to).encode() : null);
+            return page;
+        }
+
+        // 首页：细算时剪枝，只选出每个分类的前 pageSize + 1 条 (多出的一条用于判断是否有下一页)；
+        // 完整结果留到首次翻页时在会话中计算，只看首页的请求不必细算全部候选
+        PunIndex idx = indexFor(targetTypes, budget);
+        SearchTrace trace = new SearchTrace(inputWord, targetTypes, ignoreOrder);
+        Map<String, List<MergedResult>> merged = search(idx, inputWord, targetTypes, ignoreOrder, trace, null, pageSize + 1, budget);
+        boolean hasMore = merged.values().stream().anyMatch(list -> list.size() > pageSize);
+        String sessionId = hasMore ? putPageSession(new SearchSession(queryKey, pageBudget ->
+                search(idx, inputWord, targetTypes, ignoreOrder, new SearchTrace(inputWord, targetTypes, ignoreOrder), null, 0, pageBudget))) : null;
+
+        PunPage page = new PunPage(new LinkedHashMap<>(), new LinkedHashMap<>(), new LinkedHashMap<>(), budget.isTruncated());
+        for (Map.Entry<String, List<MergedResult>> entry : merged.entrySet()) {
+            putFirstPage(page, entry.getKey(), entry.getValue(), pageSize, sessionId);
+            trace.addResultCount(entry.getKey(), entry.getValue().size());
+        }
+        trace.mark(SearchTrace.Stage.SORT);
+        trace.setTruncated(budget.isTruncated());
+        punMetrics.record(trace);
+        return page;
+    }
+
+    /**
+     * 分类首页：用大小为 pageSize 的堆选出 top-K，有更多结果时生成下一页游标。
+     * list 为剪枝后的结果时，有下一页的分类总数只是下限 (完整总数见翻页结果)
+     */
+    private void putFirstPage(PunPage page, String type, List<MergedResult> list, int pageSize, String sessionId) {
+        page.getResults().put(type, toPunResults(topK(list, pageSize)));
+        page.getTotals().put(type, list.size());
+        page.getCursors().put(type, list.size() > pageSize ? new PageCursor(sessionId, type, pageSize).encode() : null);
+    }
+
+    @Override
+    public CompletableFuture<Void> generatePunStream(String inputWord, List<String> targetTypes, boolean ignoreOrder, int limit, SearchBudget budget, Consumer<PunPage> onType) {
+        PunIndex idx = indexFor(targetTypes, budget);
+        SearchTrace trace = new SearchTrace(inputWord, targetTypes, ignoreOrder);
+        List<String> searchTypes = searchTypes(idx, targetTypes);
+
+        // 1. 拼音转换与候选筛选在请求线程内完成 (所有分类共用一次倒排表遍历)
+        Map<String, CompletableFuture<List<MatchResult>>> matching = new LinkedHashMap<>();
+        List<short[]> inputPinyins = StrUtil.isEmpty(inputWord)
+                ? Collections.emptyList()
+                : getStringPinyins(inputWord);
+        if (inputPinyins.isEmpty()) {
+            for (String type : searchTypes) {
+                matching.put(type, CompletableFuture.completedFuture(Collections.emptyList()));
+            }
+        } else {
+            long[][] inputMasks = toMasks(idx, inputPinyins);
+            long[][] fuzzyMasks = toFuzzyMasks(idx, inputPinyins, inputMasks);
+            trace.mark(SearchTrace.Stage.PINYIN);
+            int minLimit = Math.min(inputPinyins.size(), punProperties.getMinMatchCount());
+
+            String cacheKey = matchCacheKey(inputPinyins, searchTypes, ignoreOrder);
+            MatchCache<List<MatchResult>> matchCache = idx.getMatchCache();
+            List<MatchResult> cached = matchCache.get(cacheKey);
+            trace.setCacheHit(cached != null);
+            if (cached != null) {
+                groupByType(idx, cached, searchTypes).forEach((type, matches) ->
+                        matching.put(type, CompletableFuture.completedFuture(matches)));
+            } else {
+                ItemStore store = idx.getItemStore();
+                int[] candidates = collectCandidates(idx, inputPinyins, store.typeMask(searchTypes), minLimit, null, budget);
+                trace.setCandidateCount(candidates.length);
+                trace.mark(SearchTrace.Stage.CANDIDATES);
+                boolean admitted = admit(candidates.length, budget);
+
+                // 2. 各分类的候选分别细算，并行进行 (出现在多个所选分类中的词条每个分类各算一次)
+                for (String type : searchTypes) {
+                    long typeMask = store.typeMask(Collections.singleton(type));
+                    matching.put(type, CompletableFuture.supplyAsync(() -> {
+                        int[] typeCandidates = filterByType(store, candidates, typeMask);
+                        List<MatchResult> matches = matchRange(store, typeCandidates, 0, typeCandidates.length, inputMasks, fuzzyMasks, typeMask, ignoreOrder, minLimit, budget);
+                        matches.sort(MEMBER_ORDER);
+                        return matches;
+                    }, scoringPool));
+                }
+                CompletableFuture<Void> allMatched = CompletableFuture.allOf(matching.values().toArray(new CompletableFuture[0]));
+                if (admitted) {
+                    allMatched.whenComplete((v, e) -> expensiveSearches.release());
+                }
+
+                // 全部分类完成后按分类顺序拼接写入缓存，与非流式生成共用同一缓存键；超出预算的部分结果不缓存
+                allMatched.thenRun(() -> {
+                    List<MatchResult> matches = new ArrayList<>();
+                    matching.values().forEach(future -> matches.addAll(future.join()));
+                    if (!budget.isTruncated() && matches.size() <= punProperties.getCacheMaxMatches()) {
+                        matchCache.put(cacheKey, matches);
+                    }
+                });
+            }
+        }
+
+        // 3. 每个分类细算完成后立即合并排序，再按 searchOrder 顺序依次回调
+        String sessionId = limit > 0 ? IdUtil.fastSimpleUUID() : null;
+        SearchSession session = limit > 0 ? new SearchSession(pageQueryKey(inputWord, targetTypes, ignoreOrder), new ConcurrentHashMap<>(), budget) : null;
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (Map.Entry<String, CompletableFuture<List<MatchResult>>> entry : matching.entrySet()) {
+            String type = entry.getKey();
+            CompletableFuture<PunPage> typePage = entry.getValue().thenApplyAsync(matches -> {
+                List<MergedResult> list = new ArrayList<>(mergeMatches(idx.getItemStore(), inputWord, matches));
+                PunPage page = new PunPage(new LinkedHashMap<>(), new LinkedHashMap<>(), new LinkedHashMap<>(), budget.isTruncated());
+                if (limit > 0) {
+                    putFirstPage(page, type, list, limit, sessionId);
+                    if (list.size() > limit) {
+                        session.merged.put(type, list);
+                        pageSessions.putIfAbsent(sessionId, session);
+                    }
+                } else {
+                    list.sort(RESULT_ORDER);
+                    page.getResults().put(type, toPunResults(list));
+                    page.getTotals().put(type, list.size());
+                    page.getCursors().put(type, null);
+                }
+                return page;
+            }, scoringPool);
+            // 回调会写客户端连接，放到 streamExecutor 上执行，慢客户端不占用 scoringPool
+            chain = chain.thenCompose(v -> typePage).thenAcceptAsync(page -> {
+                onType.accept(page);
+                trace.addResultCount(type, page.getTotals().get(type));
+            }, streamExecutor);
+        }
+
+        // 细算、合并与排序按分类交错进行，统一计入 MATCH 阶段
+        return chain.thenRun(() -> {
+            trace.mark(SearchTrace.Stage.MATCH);
+            trace.setTruncated(budget.isTruncated());
+            punMetrics.record(trace);
+        });
+    }
+
+    @Override
+    public Map<String, List<PunResult>> scanSentence(String sentence, List<String> targetTypes) {
+        PunIndex idx = indexFor(targetTypes);
+        List<String> searchTypes = searchTypes(idx, targetTypes);
+        ItemStore store = idx.getItemStore();
+        long typeMask = store.typeMask(searchTypes);
+
+        // 每个分类：(起点 << 32 | 终点) -> 该段命中的出现记录
+        Map<String, Map<Long, List<Integer>>> spansByType = new LinkedHashMap<>();
+        for (String type : searchTypes) {
+            spansByType.put(type, new HashMap<>());
+        }
+        if (StrUtil.isNotEmpty(sentence)) {
+            // 每个字的读音等价类，非汉字为空 (匹配在此断开)；输入与自动机都按字符下标对齐
+            short[][] inputSymbols = new short[sentence.length()][];
+            for (int i = 0; i < sentence.length(); i++) {
+                short[] ids = pinyinTable.get(sentence.charAt(i));
+                inputSymbols[i] = ids == null ? new short[0] : idx.getFuzzyPinyin().toClasses(ids);
+            }
+            // 自动机固定收录两字及以上的词条，更短的下限由 minMatchCount 在此过滤
+            int minLength = punProperties.getMinMatchCount();
+            idx.getPhraseAutomaton().scan(inputSymbols, (end, length, entry) -> {
+                if (length < minLength || (store.getTypeMask(entry) & typeMask) == 0) return;
+                long span = ((long) (end - length) << 32) | end;
+                for (int pos = store.memberStart(entry), memberEnd = store.memberEnd(entry); pos < memberEnd; pos++) {
+                    int member = store.memberAt(pos);
+                    Map<Long, List<Integer>> spans = spansByType.get(store.typeOf(member));
+                    if (spans != null) {
+                        spans.computeIfAbsent(span, k -> new ArrayList<>()).add(member);
+                    }
+                }
+            });
+        }
+
+        Map<String, List<PunResult>> resultMap = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<Long, List<Integer>>> entry : spansByType.entrySet()) {
+            resultMap.put(entry.getKey(), toScanResults(store, sentence, entry.getValue()));
+        }
+        return resultMap;
+    }
+
+    /**
+     * 每一段一条结果，较长的段在前，同长按该段最高词频、再按位置排序；同音词条按词频降序
+     */
+    private List<PunResult> toScanResults(ItemStore store, String sentence, Map<Long, List<Integer>> spans) {
+        List<Map.Entry<Long, List<Integer>>> sorted = new ArrayList<>(spans.entrySet());
+        for (Map.Entry<Long, List<Integer>> span : sorted) {
+            span.getValue().sort(Comparator.comparingInt((Integer m) -> store.frequencyOf(m)).reversed()
+                    .thenComparingInt(m -> m));
+        }
+        sorted.sort(Comparator.comparingInt((Map.Entry<Long, List<Integer>> span) -> spanLength(span.getKey())).reversed()
+                .thenComparing(Comparator.comparingInt((Map.Entry<Long, List<Integer>> span) -> store.frequencyOf(span.getValue().get(0))).reversed())
+                .thenComparingLong(Map.Entry::getKey));
+
+        List<PunResult> results = new ArrayList<>(sorted.size());
+        for (Map.Entry<Long, List<Integer>> span : sorted) {
+            int start = (int) (span.getKey() >>> 32);
+            int end = (int) (long) span.getKey();
+            Set<String> origins = new LinkedHashSet<>();
+            for (int member : span.getValue()) {
+                origins.add(mergeKey(store, member, store.text(store.entryOf(member))));
+            }
+            List<Integer> highlights = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                highlights.add(i);
+            }
+            results.add(new PunResult(sentence, origins, highlights));
+        }
+        return results;
+    }
+
+    private static int spanLength(long span) {
+        return (int) span - (int) (span >>> 32);
+    }
+
+    @Override
+    public TypeaheadPage typeahead(String sessionId, String inputWord, List<String> targetTypes, boolean ignoreOrder, int limit) {
+        long start = System.nanoTime();
+        int topK = Math.max(1, limit);
+        PunIndex idx = indexFor(targetTypes);
+        List<String> searchTypes = searchTypes(idx, targetTypes);
+
+        // 令牌失效、索引已重新加载或选项变化时重新开始，仍沿用原令牌
+        TypeaheadSession session = StrUtil.isBlank(sessionId) ? null : getTypeaheadSession(sessionId);
+        boolean incremental = session != null && session.accepts(idx, searchTypes, ignoreOrder);
+        if (!incremental) {
+            sweepTypeaheadSessions();
+            session = new TypeaheadSession(idx, searchTypes, ignoreOrder);
+            if (StrUtil.isBlank(sessionId) || !typeaheadSessions.containsKey(sessionId)) {
+                sessionId = IdUtil.fastSimpleUUID();
+            }
+            typeaheadSessions.put(sessionId, session);
+        }
+
+        Map<String, List<PunResult>> resultMap = new LinkedHashMap<>();
+        for (String type : searchTypes) {
+            resultMap.put(type, new ArrayList<>());
+        }
+        String word = inputWord == null ? "" : inputWord;
+        List<short[]> inputPinyins = getStringPinyins(word);
+        // 同一会话的请求串行处理 (客户端按键顺序发送)
+        synchronized (session) {
+            session.touchedAt = System.currentTimeMillis();
+            session.advance(inputPinyins);
+            if (!inputPinyins.isEmpty()) {
+                List<MatchResult> matches = typeaheadMatches(session, word, inputPinyins, topK);
+                ItemStore store = idx.getItemStore();
+                for (Map.Entry<String, List<MatchResult>> entry : groupByType(idx, matches, searchTypes).entrySet()) {
+                    List<MergedResult> merged = new ArrayList<>(mergeMatches(store, word, entry.getValue()));
+                    resultMap.put(entry.getKey(), toPunResults(topK(merged, topK)));
+                }
+            }
+        }
+        punMetrics.recordTypeahead(System.nanoTime() - start, incremental);
+        return new TypeaheadPage(sessionId, resultMap, incremental);
+    }
+
+    /**
+     * 会话中计数达到最低匹配数的词条为候选：已细算的以实际匹配字数为上界，计数变化的以命中位置数为上界，
+     * 交给 selectTopK 选取，只有可能进入前 topK 的变化词条才重新细算，结果写回会话
+     */
+    private List<MatchResult> typeaheadMatches(TypeaheadSession session, String inputWord, List<short[]> inputPinyins, int topK) {
+        PunIndex idx = session.idx;
+        ItemStore store = idx.getItemStore();
+        int minLimit = Math.min(inputPinyins.size(), punProperties.getMinMatchCount());
+        long[][] inputMasks = toMasks(idx, inputPinyins);
+        long[][] fuzzyMasks = toFuzzyMasks(idx, inputPinyins, inputMasks);
+
+        int[] ids = new int[session.size];
+        int[] bounds = new int[session.size];
+        int n = 0;
+        for (int i = 0; i < session.size; i++) {
+            MatchResult result = session.results[i];
+            int bound = result != null ? result.getMatchCount() : Math.min(session.hits[i], store.charCount(session.ids[i]));
+            if (bound < minLimit) continue;
+            ids[n] = session.ids[i];
+            bounds[n++] = bound;
+        }
+        PostingIndex.Candidates candidates = new PostingIndex.Candidates(Arrays.copyOf(ids, n), Arrays.copyOf(bounds, n));
+
+        return selectTopK(store, inputWord, candidates, inputPinyins.size(), session.typeMask, session.ignoreOrder, minLimit, topK, entry -> {
+            int i = Arrays.binarySearch(session.ids, 0, session.size, entry);
+            MatchResult result = session.results[i];
+            if (result == null) {
+                result = session.ignoreOrder
+                        ? calculateUnorderedMatch(store, inputMasks, fuzzyMasks, entry, 1)
+                        : calculateOrderedMatch(store, inputMasks, fuzzyMasks, entry, 1);
+                session.results[i] = result == null ? NO_MATCH : result;
+            }
+            if (result == null || result == NO_MATCH || result.getMatchCount() < minLimit) return null;
+            // 会话中的结果不带出现记录，返回副本供展开
+            return new MatchResult(entry, -1, result.getMatchCount(), result.getScore(), result.getIndices(), result.getSources());
+        });
+    }
+
+    /**
+     * 移除闲置超时的会话，新建会话时顺带清理，不依赖 LRU 溢出淘汰
+     */
+    private void sweepTypeaheadSessions() {
+        long expiredBefore = System.currentTimeMillis() - punProperties.getTypeaheadSessionTtlSeconds() * 1000L;
+        synchronized (typeaheadSessions) {
+            typeaheadSessions.values().removeIf(session -> session.touchedAt < expiredBefore);
+        }
+    }
+
+    private TypeaheadSession getTypeaheadSession(String sessionId) {
+        TypeaheadSession session = typeaheadSessions.get(sessionId);
+        if (session != null && System.currentTimeMillis() - session.touchedAt > punProperties.getTypeaheadSessionTtlSeconds() * 1000L) {
+            typeaheadSessions.remove(sessionId);
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * 用有界堆选出前 k 个结果 (已排序)，复杂度 O(n log k)
+     */
+    private List<MergedResult> topK(List<MergedResult> list, int k) {
+        if (list.size() <= k) {
+            List<MergedResult> all = new ArrayList<>(list);
+            all.sort(RESULT_ORDER);
+            return all;
+        }
+        // 堆顶为当前 top-K 中最差的一个
+        PriorityQueue<MergedResult> heap = new PriorityQueue<>(k + 1, RESULT_ORDER.reversed());
+        for (MergedResult r : list) {
+            if (heap.size() < k) {
+                heap.add(r);
+            } else if (RESULT_ORDER.compare(r, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(r);
+            }
+        }
+        List<MergedResult> top = new ArrayList<>(heap);
+        top.sort(RESULT_ORDER);
+        return top;
+    }
+
+    private List<PunResult> toPunResults(List<MergedResult> list) {
+        List<PunResult> results = new ArrayList<>(list.size());
+        for (MergedResult r : list) {
+            results.add(r.toPunResult());
+        }
+        return results;
+    }
+
+    /**
+     * 分页会话的查询键：输入、顺序选项与规范化后的分类
+     */
+    private String pageQueryKey(String inputWord, List<String> targetTypes, boolean ignoreOrder) {
+        return inputWord + '\u0000' + ignoreOrder + '\u0000' + String.join(",", searchTypes(index, targetTypes));
+    }
+
+    private SearchSession getPageSession(String sessionId) {
+        SearchSession session = pageSessions.get(sessionId);
+        if (session != null && System.currentTimeMillis() - session.createdAt > punProperties.getPageSessionTtlSeconds() * 1000L) {
+            pageSessions.remove(sessionId);
+            return null;
+        }
+        return session;
+    }
+
+    private String putPageSession(SearchSession session) {
+        String sessionId = IdUtil.fastSimpleUUID();
+        pageSessions.put(sessionId, session);
+        return sessionId;
+    }
+
+    /**
+     * 搜索并按 finalPun 合并，返回每个分类未排序的结果 (按 searchOrder 排列分类)
+     * @param idx 请求开始时取得的索引，整个请求只读这一份，不受并发重新加载影响
+     * @param lookups 批量生成时各输入共享的中间结果，单次生成时为 null
+     * @param topK    > 0 时调用方只取每个分类的前 topK 条，细算时跳过不可能进入前 topK 的候选；
+     *                此时各分类返回的结果不完整，不能用于统计总数或翻页
+     * @param budget  预算用完时返回部分结果并标记 truncated
+     */
+    private Map<String, List<MergedResult>> search(PunIndex idx, String inputWord, List<String> targetTypes, boolean ignoreOrder, SearchTrace trace, BatchLookups lookups, int topK, SearchBudget budget) {
+        Map<String, List<MergedResult>> resultMap = new LinkedHashMap<>();
+        List<String> searchTypes = searchTypes(idx, targetTypes);
+
+        for (String type : searchTypes) {
+            resultMap.putIfAbsent(type, new ArrayList<>());
+        }
+
+        if (inputWord == null || inputWord.isEmpty()) return resultMap;
+
+        // 获取多音字组合，并转为位图供匹配时做位运算
+        List<short[]> inputPinyins = getStringPinyins(inputWord);
+        if (inputPinyins.isEmpty()) return resultMap;
+        long[][] inputMasks = toMasks(idx, inputPinyins);
+        long[][] fuzzyMasks = toFuzzyMasks(idx, inputPinyins, inputMasks);
+        trace.mark(SearchTrace.Stage.PINYIN);
+
+        // 1. 确定最低匹配数
+        // 比如输入"已生一世" (4字), 配置min=2, 则limit=2
+        // 比如输入"啊" (1字), 配置min=2, 则limit=1 (取最小值)
+        int minLimit = Math.min(inputPinyins.size(), punProperties.getMinMatchCount());
+
+        // 2. 按拼音查缓存，同音输入共享匹配结果，只需重新代入汉字
+        String cacheKey = matchCacheKey(inputPinyins, searchTypes, ignoreOrder);
+        MatchCache<List<MatchResult>> matchCache = idx.getMatchCache();
+        List<MatchResult> matches = matchCache.get(cacheKey);
+        trace.setCacheHit(matches != null);
+        if (matches == null && topK > 0) {
+            // 剪枝后的结果不完整，不写入缓存
+            matches = matchTopK(idx, inputWord, inputPinyins, inputMasks, fuzzyMasks, resultMap.keySet(), ignoreOrder, minLimit, topK, trace, lookups);
+            trace.mark(SearchTrace.Stage.MATCH);
+        } else if (matches == null) {
+            matches = match(idx, inputPinyins, inputMasks, fuzzyMasks, resultMap.keySet(), ignoreOrder, minLimit, trace, lookups, budget);
+            trace.mark(SearchTrace.Stage.MATCH);
+            // 结果过多的查询不缓存，避免单条缓存占用过多内存；超出预算的部分结果不缓存
+            if (!budget.isTruncated() && matches.size() <= punProperties.getCacheMaxMatches()) {
+                matchCache.put(cacheKey, matches);
+            }
+        }
+
+        trace.setMatchCount(matches.size());
+
+        // 3. 代入输入汉字并按分类合并，结果多时各分类并行合并
+        Map<String, List<MatchResult>> matchesByType = groupByType(idx, matches, searchTypes);
+
+        Map<String, CompletableFuture<Collection<MergedResult>>> merging = new LinkedHashMap<>();
+        boolean parallel = matches.size() >= punProperties.getParallelThreshold();
+        for (Map.Entry<String, List<MatchResult>> entry : matchesByType.entrySet()) {
+            List<MatchResult> typeMatches = entry.getValue();
+            merging.put(entry.getKey(), parallel
+                    ? CompletableFuture.supplyAsync(() -> mergeMatches(idx.getItemStore(), inputWord, typeMatches), scoringPool)
+                    : CompletableFuture.completedFuture(mergeMatches(idx.getItemStore(), inputWord, typeMatches)));
+        }
+
+        // 4. 收集 (排序交给调用方)
+        for (Map.Entry<String, CompletableFuture<Collection<MergedResult>>> entry : merging.entrySet()) {
+            Collection<MergedResult> merged = entry.getValue().join();
+            if (merged.isEmpty()) continue;
+            resultMap.put(entry.getKey(), new ArrayList<>(merged));
+        }
+        trace.mark(SearchTrace.Stage.MERGE);
+        return resultMap;
+    }
+
+    /**
+     * 要搜索的分类 (去重)，按 searchOrder 排序；未指定时为本实例负责的全部分类。
+     * 未配置的分类直接丢弃，结果与指标中只会出现已配置的分类
+     */
+    private List<String> searchTypes(PunIndex idx, List<String> targetTypes) {
+        List<String> searchTypes;
+        if (targetTypes == null || targetTypes.isEmpty()) {
+            searchTypes = new ArrayList<>(idx.getAllTypes());
+            searchTypes.removeIf(this::isRemote);
+        } else {
+            searchTypes = new ArrayList<>(new LinkedHashSet<>(targetTypes));
+            searchTypes.removeIf(t -> !idx.getAllTypes().contains(t));
+        }
+
+        searchTypes.sort(Comparator.comparingInt(t -> idx.getTypePriorityMap().getOrDefault(t, Integer.MAX_VALUE)));
+        return searchTypes;
+    }
+
+    /**
+     * 按分类拆分匹配结果，每个分类内保持原有顺序
+     */
+    private Map<String, List<MatchResult>> groupByType(PunIndex idx, List<MatchResult> matches, List<String> searchTypes) {
+        Map<String, List<MatchResult>> matchesByType = new LinkedHashMap<>();
+        for (String type : searchTypes) {
+            matchesByType.put(type, new ArrayList<>());
+        }
+        for (MatchResult match : matches) {
+            List<MatchResult> typeMatches = matchesByType.get(idx.getItemStore().typeOf(match.getMember()));
+            if (typeMatches != null) typeMatches.add(match);
+        }
+        return matchesByType;
+    }
+
+    /**
+     * 将同一分类的匹配结果代入输入汉字，并按最终文本合并
+     */
+    private Collection<MergedResult> mergeMatches(ItemStore store, String inputWord, List<MatchResult> matches) {
+        Map<String, MergedResult> group = new HashMap<>();
+        for (MatchResult match : matches) {
+            int member = match.getMember();
+            String text = store.text(match.getEntry());
+            String fullPunDisplay = constructPlainString(text, match.getIndices(), match.getSources(), inputWord);
+            String fullOriginText = text;
+            List<Integer> finalIndices = new ArrayList<>(match.getIndices().length);
+            for (int index : match.getIndices()) {
+                finalIndices.add(index);
+            }
+
+            String extra = store.extraOf(member);
+            if ("歇后语".equals(store.typeOf(member)) && StrUtil.isNotBlank(extra)) {
+                String prefix = extra + "——";
+                // 歇后语也需要把前缀加回去
+                fullPunDisplay = prefix + fullPunDisplay;
+                fullOriginText = prefix + text;
+                int offset = prefix.length();
+                finalIndices.replaceAll(i -> i + offset);
+            }
+
+            if (group.containsKey(fullPunDisplay)) {
+                group.get(fullPunDisplay).addOrigin(fullOriginText, match.getMatchCount(), match.getScore(), store.frequencyOf(member));
+            } else {
+                // 【调用修复】参数顺序严格对应构造函数
+                group.put(fullPunDisplay, new MergedResult(
+                        fullPunDisplay,     // String
+                        finalIndices,       // List
+                        match.getMatchCount(), // int
+                        match.getScore(),      // int
+                        store.frequencyOf(member), // int
+                        fullOriginText         // String
+                ));
+            }
+        }
+        return group.values();
+    }
+
+    /**
+     * 缓存键：每个输入位置的读音 ID + 分类集合 + 是否忽略顺序
+     */
+    private String matchCacheKey(List<short[]> inputPinyins, List<String> searchTypes, boolean ignoreOrder) {
+        StringBuilder sb = new StringBuilder(ignoreOrder ? "U" : "O");
+        for (short[] ids : inputPinyins) {
+            sb.append('|');
+            for (short id : ids) {
+                sb.append(id).append(',');
+            }
+        }
+        sb.append('#');
+        for (String type : searchTypes) {
+            sb.append(type).append(',');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 候选筛选与细算，结果只依赖输入拼音，不依赖具体汉字
+     */
+    private List<MatchResult> match(PunIndex idx, List<short[]> inputPinyins, long[][] inputMasks, long[][] fuzzyMasks, Set<String> types, boolean ignoreOrder, int minLimit, SearchTrace trace, BatchLookups lookups, SearchBudget budget) {
+        ItemStore store = idx.getItemStore();
+        long typeMask = store.typeMask(types);
+        int[] candidates = collectCandidates(idx, inputPinyins, typeMask, minLimit, lookups, budget);
+        trace.setCandidateCount(candidates.length);
+        trace.mark(SearchTrace.Stage.CANDIDATES);
+        // 批量生成在 batchPool 中执行，并发已受 batchParallelism 限制，不参与重查询限流
+        boolean admitted = lookups == null && admit(candidates.length, budget);
+        try {
+            return matchCandidates(store, candidates, inputMasks, fuzzyMasks, typeMask, ignoreOrder, minLimit, budget);
+        } finally {
+            if (admitted) {
+                expensiveSearches.release();
+            }
+        }
+    }
+
+    private List<MatchResult> matchCandidates(ItemStore store, int[] candidates, long[][] inputMasks, long[][] fuzzyMasks, long typeMask, boolean ignoreOrder, int minLimit, SearchBudget budget) {
+        // 细算：候选较少时在请求线程内完成，较多时分片并行，再按分片顺序拼接
+        List<MatchResult> matches;
+        if (candidates.length < punProperties.getParallelThreshold() || scoringPool.getParallelism() <= 1) {
+            matches = matchRange(store, candidates, 0, candidates.length, inputMasks, fuzzyMasks, typeMask, ignoreOrder, minLimit, budget);
+        } else {
+            int chunkCount = scoringPool.getParallelism() * 4;
+            int chunkSize = (candidates.length + chunkCount - 1) / chunkCount;
+            List<CompletableFuture<List<MatchResult>>> futures = new ArrayList<>();
+            for (int from = 0; from < candidates.length; from += chunkSize) {
+                int start = from;
+                int end = Math.min(from + chunkSize, candidates.length);
+                futures.add(CompletableFuture.supplyAsync(
+                        () -> matchRange(store, candidates, start, end, inputMasks, fuzzyMasks, typeMask, ignoreOrder, minLimit, budget), scoringPool));
+            }
+            matches = new ArrayList<>();
+            for (CompletableFuture<List<MatchResult>> future : futures) {
+                matches.addAll(future.join());
+            }
+        }
+        // 词条按文本首次出现的顺序编号，恢复为各词库内的原始顺序，保证同分结果的先后不变
+        matches.sort(MEMBER_ORDER);
+        return matches;
+    }
+
+    /**
+     * 只需每个分类前 topK 条时的细算。
+     * 结果依次按匹配字数、分数档位、词频排序，每个候选在细算前即可得到这三项的上界：
+     * 匹配字数不超过命中的不同输入位置数 (且不超过词条字数)，分数不超过全部连续命中时的分数，词频已知。
+     * 候选按上界从高到低处理，某分类已有 topK 个不同结果严格优于候选的上界时，该候选在这个分类中不可能进入前 topK，
+     * 直接跳过，细算的候选数随 topK 而不是候选总数增长。
+     * 被跳过的候选若与已有结果代入后文本相同，会并入该结果成为其来源之一，最后补算这部分，
+     * 因此前 topK 的结果、来源及排序与完整计算完全一致
+     */
+    private List<MatchResult> matchTopK(PunIndex idx, String inputWord, List<short[]> inputPinyins, long[][] inputMasks, long[][] fuzzyMasks, Set<String> types, boolean ignoreOrder, int minLimit, int topK, SearchTrace trace, BatchLookups lookups) {
+        ItemStore store = idx.getItemStore();
+        long typeMask = store.typeMask(types);
+        PostingIndex.Candidates candidates = collectBoundedCandidates(idx, inputPinyins, typeMask, minLimit, lookups);
+        trace.setCandidateCount(candidates.ids.length);
+        trace.mark(SearchTrace.Stage.CANDIDATES);
+        return selectTopK(store, inputWord, candidates, inputPinyins.size(), typeMask, ignoreOrder, minLimit, topK, entry -> ignoreOrder
+                ? calculateUnorderedMatch(store, inputMasks, fuzzyMasks, entry, minLimit)
+                : calculateOrderedMatch(store, inputMasks, fuzzyMasks, entry, minLimit));
+    }
+
+    /**
+     * matchTopK 的选取部分，细算由 matcher 完成 (返回 member 为 -1 的新结果，不匹配时为 null)；
+     * 边输入边搜索时 matcher 优先取会话中保存的结果
+     *
+     * @param candidates 候选及各自匹配字数的上界 (不小于实际匹配字数即可)
+     * @param maxBound   上界的最大值，即输入位置数
+     */
+    private List<MatchResult> selectTopK(ItemStore store, String inputWord, PostingIndex.Candidates candidates, int maxBound, long typeMask, boolean ignoreOrder, int minLimit, int topK, IntFunction<MatchResult> matcher) {
+        // 每个词条在一个分类中最多产生一个结果，候选不多于 topK 时不可能剪枝，直接全部细算
+        if (candidates.ids.length <= topK) {
+            List<MatchResult> matches = new ArrayList<>();
+            for (int entry : candidates.ids) {
+                MatchResult match = matcher.apply(entry);
+                if (match != null) {
+                    addMemberMatches(store, entry, match, typeMask, matches);
+                }
+            }
+            matches.sort(MEMBER_ORDER);
+            return matches;
+        }
+
+        // 按匹配字数上界分桶，桶内按所选分类中的最高词频降序，使各分类的门槛尽早建立
+        int[] bucketStart = new int[maxBound + 2];
+        for (int bound : candidates.hits) {
+            bucketStart[bound + 1]++;
+        }
+        for (int b = 0; b <= maxBound; b++) {
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        long[] order = new long[candidates.ids.length];
+        int[] fill = Arrays.copyOf(bucketStart, maxBound + 1);
+        for (int i = 0; i < candidates.ids.length; i++) {
+            int entry = candidates.ids[i];
+            long maxFreq = 0;
+            for (int pos = store.memberStart(entry), end = store.memberEnd(entry); pos < end; pos++) {
+                int member = store.memberAt(pos);
+                if ((typeMask & (1L << store.typeIndexOf(member))) != 0) {
+                    maxFreq = Math.max(maxFreq, freqKey(store.frequencyOf(member)));
+                }
+            }
+            // 高 32 位为词频取反 (升序排序即词频降序)，低 32 位为词条 ID
+            order[fill[candidates.hits[i]]++] = ((0xFFFFFFFFL - maxFreq) << 32) | entry;
+        }
+
+        TopKState[] states = new TopKState[ItemStore.MAX_TYPES];
+        List<MatchResult> matches = new ArrayList<>();
+        // 被跳过的出现记录，同一词条的记录相邻
+        int[] skipped = new int[64];
+        int skippedSize = 0;
+        for (int bound = maxBound; bound >= minLimit; bound--) {
+            Arrays.sort(order, bucketStart[bound], bucketStart[bound + 1]);
+            int maxScore = ignoreOrder ? EXACT_HIT_SCORE * bound : EXACT_HIT_SCORE * bound + CONTIGUOUS_BONUS * (bound - 1);
+            long boundKey = rankKey(bound, maxScore, 0);
+
+            for (int i = bucketStart[bound]; i < bucketStart[bound + 1]; i++) {
+                int entry = (int) order[i];
+                boolean needed = false;
+                for (int pos = store.memberStart(entry), end = store.memberEnd(entry); pos < end && !needed; pos++) {
+                    int member = store.memberAt(pos);
+                    // 未选分类没有 TopKState，不能据此判定需要细算
+                    if ((typeMask & (1L << store.typeIndexOf(member))) == 0) continue;
+                    needed = isContender(store, member, states, boundKey);
+                }
+                MatchResult match = needed ? matcher.apply(entry) : null;
+                if (needed && match == null) continue;
+
+                String pun = null;
+                for (int pos = store.memberStart(entry), end = store.memberEnd(entry); pos < end; pos++) {
+                    int member = store.memberAt(pos);
+                    if ((typeMask & (1L << store.typeIndexOf(member))) == 0) continue;
+                    if (match == null || !isContender(store, member, states, boundKey)) {
+                        if (skippedSize == skipped.length) skipped = Arrays.copyOf(skipped, skippedSize * 2);
+                        skipped[skippedSize++] = member;
+                        continue;
+                    }
+                    MatchResult memberMatch = match.getMember() < 0 ? match
+                            : new MatchResult(entry, member, match.getMatchCount(), match.getScore(), match.getIndices(), match.getSources());
+                    memberMatch.setMember(member);
+                    matches.add(memberMatch);
+
+                    if (pun == null) {
+                        pun = constructPlainString(store.text(entry), match.getIndices(), match.getSources(), inputWord);
+                    }
+                    int t = store.typeIndexOf(member);
+                    if (states[t] == null) states[t] = new TopKState(topK);
+                    states[t].offer(store, member, pun, match.getMatchCount(), match.getScore(), store.frequencyOf(member));
+                }
+            }
+        }
+
+        // 补算：被跳过的记录只有在代入后文本与已有结果相同时才会影响前 topK (并入该结果)；
+        // 只由被跳过的记录组成的结果排序键低于门槛，不可能进入前 topK
+        int lastEntry = -1;
+        MatchResult lastMatch = null;
+        String lastPun = null;
+        for (int i = 0; i < skippedSize; i++) {
+            int member = skipped[i];
+            int entry = store.entryOf(member);
+            TopKState state = states[store.typeIndexOf(member)];
+            if (state == null || !state.mayMergeInto(store, entry, inputWord)) continue;
+            if (entry != lastEntry) {
+                lastEntry = entry;
+                lastMatch = matcher.apply(entry);
+                lastPun = lastMatch == null ? null : constructPlainString(store.text(entry), lastMatch.getIndices(), lastMatch.getSources(), inputWord);
+            }
+            if (lastMatch != null && state.best.containsKey(mergeKey(store, member, lastPun))) {
+                matches.add(new MatchResult(entry, member, lastMatch.getMatchCount(), lastMatch.getScore(), lastMatch.getIndices(), lastMatch.getSources()));
+            }
+        }
+
+        matches.sort(MEMBER_ORDER);
+        return matches;
+    }
+
+    /**
+     * 出现记录的排序上界不劣于其分类当前的第 topK 名
+     */
+    private static boolean isContender(ItemStore store, int member, TopKState[] states, long boundKey) {
+        TopKState state = states[store.typeIndexOf(member)];
+        return state == null || state.threshold <= (boundKey | freqKey(store.frequencyOf(member)));
+    }
+
+    /**
+     * 排序键：匹配字数、分数档位、词频依次占高、中、低位，数值越大排序越靠前 (与 RESULT_ORDER 的前三项一致)
+     */
+    private static long rankKey(int matchCount, int score, int frequency) {
+        return ((long) matchCount << 48) | ((long) (score / SCORE_BAND) << 32) | freqKey(frequency);
+    }
+
+    private static long freqKey(int frequency) {
+        return (long) frequency - Integer.MIN_VALUE;
+    }
+
+    /**
+     * 与 mergeMatches 相同的合并键：代入后的文本，歇后语带上前缀
+     */
+    private static String mergeKey(ItemStore store, int member, String pun) {
+        String extra = store.extraOf(member);
+        return "歇后语".equals(store.typeOf(member)) && StrUtil.isNotBlank(extra) ? extra + "——" + pun : pun;
+    }
+
+    /**
+     * 一个分类已得到的结果：按合并键合并 (与 MergedResult 的合并规则相同)，
+     * threshold 为第 topK 名的排序键，只会随结果增加而升高；未满 topK 个时为最小值
+     */
+    private static class TopKState {
+        final int topK;
+        // 合并键 -> {匹配字数, 分数, 词频}
+        final Map<String, int[]> best = new HashMap<>();
+        // 不带歇后语前缀的代入文本
+        final Set<String> puns = new HashSet<>();
+        long threshold = Long.MIN_VALUE;
+        int dirty;
+        // 补算时的快速排除：按 (长度, 首字) 索引已有结果；首字为输入中的字 (可能是代入的) 时只按长度索引
+        Map<Long, List<String>> byHead;
+        Map<Integer, List<String>> byLength;
+
+        TopKState(int topK) {
+            this.topK = topK;
+        }
+
+        void offer(ItemStore store, int member, String pun, int matchCount, int score, int frequency) {
+            puns.add(pun);
+            String key = mergeKey(store, member, pun);
+            int[] merged = best.get(key);
+            if (merged == null) {
+                best.put(key, new int[]{matchCount, score, frequency});
+            } else if (matchCount > merged[0]) {
+                merged[0] = matchCount;
+                merged[1] = score;
+                merged[2] = frequency;
+            } else if (matchCount == merged[0]) {
+                merged[1] = Math.max(merged[1], score);
+                merged[2] = Math.max(merged[2], frequency);
+            }
+            // 每积累一定数量的更新再重算门槛，门槛滞后只会少剪
+            if (++dirty > topK / 2 && best.size() >= topK) {
+                long[] keys = new long[best.size()];
+                int n = 0;
+                for (int[] v : best.values()) {
+                    keys[n++] = rankKey(v[0], v[1], v[2]);
+                }
+                Arrays.sort(keys);
+                threshold = keys[keys.length - topK];
+                dirty = 0;
+            }
+        }
+
+        /**
+         * 词条代入后能否与某个已有结果文本相同：代入只会把字换成输入中的字，
+         * 因此词条与结果在结果中不是输入字的位置上必须相同
+         */
+        boolean mayMergeInto(ItemStore store, int entry, String inputWord) {
+            if (byHead == null) {
+                byHead = new HashMap<>();
+                byLength = new HashMap<>();
+                for (String pun : puns) {
+                    if (inputWord.indexOf(pun.charAt(0)) >= 0) {
+                        byLength.computeIfAbsent(pun.length(), k -> new ArrayList<>()).add(pun);
+                    } else {
+                        byHead.computeIfAbsent(((long) pun.length() << 16) | pun.charAt(0), k -> new ArrayList<>()).add(pun);
+                    }
+                }
+            }
+            int length = store.textLength(entry);
+            return anyMergeable(byHead.get(((long) length << 16) | store.charAt(entry, 0)), store, entry, inputWord)
+                    || anyMergeable(byLength.get(length), store, entry, inputWord);
+        }
+
+        private static boolean anyMergeable(List<String> puns, ItemStore store, int entry, String inputWord) {
+            if (puns == null) return false;
+            for (String pun : puns) {
+                int k = 0;
+                while (k < pun.length() && (store.charAt(entry, k) == pun.charAt(k) || inputWord.indexOf(pun.charAt(k)) >= 0)) {
+                    k++;
+                }
+                if (k == pun.length()) return true;
+            }
+            return false;
+        }
+    }
+
+    // 包级可见的方法供基准测试 (src/jmh) 直接调用
+
+    long[][] toMasks(PunIndex idx, List<short[]> inputPinyins) {
+        long[][] inputMasks = new long[inputPinyins.size()][];
+        for (int i = 0; i < inputMasks.length; i++) {
+            inputMasks[i] = idx.getSyllableTable().toMask(inputPinyins.get(i));
+        }
+        return inputMasks;
+    }
+
+    /**
+     * 模糊位图：包含输入读音所在等价类的全部音节；未配置模糊音时与精确位图为同一数组
+     */
+    long[][] toFuzzyMasks(PunIndex idx, List<short[]> inputPinyins, long[][] inputMasks) {
+        FuzzyPinyin fuzzyPinyin = idx.getFuzzyPinyin();
+        if (!fuzzyPinyin.isEnabled()) return inputMasks;
+        long[][] fuzzyMasks = new long[inputMasks.length][];
+        for (int i = 0; i < fuzzyMasks.length; i++) {
+            fuzzyMasks[i] = fuzzyPinyin.toFuzzyMask(inputPinyins.get(i), inputMasks[i]);
+        }
+        return fuzzyMasks;
+    }
+
+    /**
+     * 候选集筛选：按倒排表计数，命中的不同输入位置数 < minLimit 的词条不可能匹配成功，直接丢弃
+     */
+    int[] collectCandidates(PunIndex idx, List<short[]> inputPinyins, long typeMask, int minLimit) {
+        return collectCandidates(idx, inputPinyins, typeMask, minLimit, null);
+    }
+
+    private int[] collectCandidates(PunIndex idx, List<short[]> inputPinyins, long typeMask, int minLimit, BatchLookups lookups) {
+        List<short[]> inputClasses = toInputClasses(idx, inputPinyins);
+        int[] candidateIds = lookups == null
+                ? idx.getPostingIndex().collect(inputClasses, minLimit)
+                : idx.getPostingIndex().collectUnions(lookups.getPositionItems(inputClasses, idx.getPostingIndex()), minLimit);
+        ItemStore store = idx.getItemStore();
+        int n = 0;
+        for (int entry : candidateIds) {
+            // 类型过滤：词条所属分类与所选分类无交集
+            if ((store.getTypeMask(entry) & typeMask) == 0) continue;
+            // 长度剪枝：如果词条拼音数 < minLimit，绝对无法匹配成功，直接丢弃
+            if (store.charCount(entry) < minLimit) continue;
+
+            candidateIds[n++] = entry;
+        }
+        return n == candidateIds.length ? candidateIds : Arrays.copyOf(candidateIds, n);
+    }
+
+    /**
+     * 在预算内筛选候选：预算有限时候选按匹配字数上界从高到低排列 (同上界按词条 ID)，
+     * 中途超时时已细算的是最有希望的部分；候选超出 maxCandidates 时只保留前 maxCandidates 个并标记 truncated
+     */
+    private int[] collectCandidates(PunIndex idx, List<short[]> inputPinyins, long typeMask, int minLimit, BatchLookups lookups, SearchBudget budget) {
+        if (!budget.isLimited()) {
+            return collectCandidates(idx, inputPinyins, typeMask, minLimit, lookups);
+        }
+        PostingIndex.Candidates candidates = collectBoundedCandidates(idx, inputPinyins, typeMask, minLimit, lookups);
+        // 按上界计数排序，上界为 maxBound - k 的候选放在第 k 段
+        int maxBound = inputPinyins.size();
+        int[] segmentStart = new int[maxBound + 2];
+        for (int bound : candidates.hits) {
+            segmentStart[maxBound - bound + 1]++;
+        }
+        for (int k = 0; k <= maxBound; k++) {
+            segmentStart[k + 1] += segmentStart[k];
+        }
+        int[] ordered = new int[candidates.ids.length];
+        for (int i = 0; i < candidates.ids.length; i++) {
+            ordered[segmentStart[maxBound - candidates.hits[i]]++] = candidates.ids[i];
+        }
+        int maxCandidates = budget.getMaxCandidates();
+        if (maxCandidates > 0 && ordered.length > maxCandidates) {
+            budget.markTruncated();
+            return Arrays.copyOf(ordered, maxCandidates);
+        }
+        return ordered;
+    }
+
+    /**
+     * 重查询限流：候选数达到 expensiveCandidates 时需取得许可才能细算，
+     * 等待不超过 expensiveQueueTimeoutMs 与剩余的时间预算，仍未取得则拒绝，避免少数长输入占满线程、拖慢普通短查询
+     * @return 是否取得了许可，取得时细算结束后需释放
+     * @throws SearchRejectedException 等待超时
+     */
+    private boolean admit(int candidateCount, SearchBudget budget) {
+        int threshold = punProperties.getExpensiveCandidates();
+        if (threshold <= 0 || candidateCount < threshold) return false;
+        long waitMs = Math.min(punProperties.getExpensiveQueueTimeoutMs(), budget.remainingMillis());
+        try {
+            if (expensiveSearches.tryAcquire(Math.max(0, waitMs), TimeUnit.MILLISECONDS)) return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        punMetrics.recordRejected();
+        throw new SearchRejectedException("同时进行的重查询过多，请稍后重试");
+    }
+
+    /**
+     * 与 collectCandidates 相同的筛选，同时给出每个候选匹配字数的上界：命中的不同输入位置数，且不超过词条字数
+     */
+    private PostingIndex.Candidates collectBoundedCandidates(PunIndex idx, List<short[]> inputPinyins, long typeMask, int minLimit, BatchLookups lookups) {
+        List<short[]> inputClasses = toInputClasses(idx, inputPinyins);
+        PostingIndex.Candidates collected = lookups == null
+                ? idx.getPostingIndex().collectWithHits(inputClasses, minLimit)
+                : idx.getPostingIndex().collectUnionsWithHits(lookups.getPositionItems(inputClasses, idx.getPostingIndex()), minLimit);
+        ItemStore store = idx.getItemStore();
+        int[] ids = collected.ids;
+        int[] hits = collected.hits;
+        int n = 0;
+        for (int i = 0; i < ids.length; i++) {
+            int entry = ids[i];
+            int charCount = store.charCount(entry);
+            if ((store.getTypeMask(entry) & typeMask) == 0 || charCount < minLimit) continue;
+            ids[n] = entry;
+            hits[n++] = Math.min(hits[i], charCount);
+        }
+        return new PostingIndex.Candidates(Arrays.copyOf(ids, n), Arrays.copyOf(hits, n));
+    }
+
+    /**
+     * 倒排表以等价类 ID 为键，模糊与精确查询读取的倒排表数量相同
+     */
+    private static List<short[]> toInputClasses(PunIndex idx, List<short[]> inputPinyins) {
+        if (!idx.getFuzzyPinyin().isEnabled()) return inputPinyins;
+        List<short[]> inputClasses = new ArrayList<>(inputPinyins.size());
+        for (short[] ids : inputPinyins) {
+            inputClasses.add(idx.getFuzzyPinyin().toClasses(ids));
+        }
+        return inputClasses;
+    }
+
+    private static int[] filterByType(ItemStore store, int[] candidates, long typeMask) {
+        int[] filtered = new int[candidates.length];
+        int n = 0;
+        for (int entry : candidates) {
+            if ((store.getTypeMask(entry) & typeMask) != 0) {
+                filtered[n++] = entry;
+            }
+        }
+        return Arrays.copyOf(filtered, n);
+    }
+
+    /**
+     * 细算 candidates[from, to)，每个词条只算一次，再按所选分类展开为各出现记录的结果。
+     * 超出时间预算时停止，返回已算出的部分
+     */
+    List<MatchResult> matchRange(ItemStore store, int[] candidates, int from, int to, long[][] inputMasks, long[][] fuzzyMasks, long typeMask, boolean ignoreOrder, int minLimit, SearchBudget budget) {
+        List<MatchResult> matches = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            // 每 256 个候选检查一次时间
+            if (((i - from) & 0xFF) == 0 && budget.isExpired()) {
+                budget.markTruncated();
+                break;
+            }
+            int entry = candidates[i];
+            MatchResult match;
+            if (ignoreOrder) {
+                match = calculateUnorderedMatch(store, inputMasks, fuzzyMasks, entry, minLimit);
+            } else {
+                match = calculateOrderedMatch(store, inputMasks, fuzzyMasks, entry, minLimit);
+            }
+            if (match == null) continue;
+            addMemberMatches(store, entry, match, typeMask, matches);
+        }
+        return matches;
+    }
+
+    /**
+     * 将词条的细算结果按所选分类展开为各出现记录的结果，match 本身作为第一条
+     */
+    private static void addMemberMatches(ItemStore store, int entry, MatchResult match, long typeMask, List<MatchResult> matches) {
+        for (int pos = store.memberStart(entry), end = store.memberEnd(entry); pos < end; pos++) {
+            int member = store.memberAt(pos);
+            if ((typeMask & (1L << store.typeIndexOf(member))) == 0) continue;
+            if (match.getMember() < 0) {
+                match.setMember(member);
+                matches.add(match);
+            } else {
+                // 同一词条出现在多个所选分类中，共用匹配下标
+                matches.add(new MatchResult(entry, member, match.getMatchCount(), match.getScore(), match.getIndices(), match.getSources()));
+            }
+        }
+    }
+
+    /**
+     * 分页游标：会话 ID + 分类 + 偏移量，Base64 编码后交给前端
+     */
+    @AllArgsConstructor
+    private static class PageCursor {
+        final String sessionId;
+        final String type;
+        final int offset;
+
+        String encode() {
+            String raw = sessionId + "\n" + type + "\n" + offset;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static PageCursor decode(String cursor) {
+            if (StrUtil.isBlank(cursor)) return null;
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                String[] parts = raw.split("\n", -1);
+                if (parts.length != 3) return null;
+                return new PageCursor(parts[0], parts[1], Math.max(0, Integer.parseInt(parts[2])));
+            } catch (IllegalArgumentException e) {
+                // 非法游标按首页处理
+                return null;
+            }
+        }
+    }
+
+    // ----------------- 核心算法区 -----------------
+
+    /**
+     * 有序匹配 (支持跳字匹配，替换字符)
+     * 按模糊位图判断是否命中，读音完全相同的命中比仅模糊音相同的得分高。
+     * 先对每个起点只计算匹配数与得分 (不分配任何对象)，被淘汰的候选零分配；
+     * 只有最终胜出的起点才重放一次，生成命中下标
+     */
+    MatchResult calculateOrderedMatch(ItemStore store, long[][] inputMasks, long[][] fuzzyMasks, int entry, int minLimit) {
+        int base = store.charStart(entry);
+        int charCount = store.charCount(entry);
+        int bestStart = -1;
+        int bestCount = 0;
+        int bestScore = 0;
+
+        for (int i = 0; i < inputMasks.length; i++) {
+            // 从 i 开始最多命中 length - i 个字，已不可能达到下限或超过当前最优时提前结束
+            int remaining = inputMasks.length - i;
+            if (remaining < minLimit || remaining < bestCount) break;
+
+            int currentDictIdx = 0;
+            int lastFoundAt = -1;
+            int matchCount = 0;
+            int score = 0;
+
+            for (int j = i; j < inputMasks.length && currentDictIdx < charCount; j++) {
+                int foundAt = findOrdered(store, fuzzyMasks[j], base, charCount, currentDictIdx);
+                if (foundAt != -1) {
+                    score += hitScore(store, inputMasks[j], fuzzyMasks[j], base + foundAt);
+                    if (matchCount > 0 && foundAt == lastFoundAt + 1) {
+                        score += CONTIGUOUS_BONUS; // 连贯加分
+                    }
+                    matchCount++;
+                    lastFoundAt = foundAt;
+                    currentDictIdx = foundAt + 1;
+                }
+            }
+
+            if (matchCount >= minLimit && (bestStart < 0 || matchCount > bestCount || (matchCount == bestCount && score > bestScore))) {
+                bestStart = i;
+                bestCount = matchCount;
+                bestScore = score;
+            }
+        }
+        if (bestStart < 0) return null;
+
+        // 重放胜出的起点，记录替换：字典第 indices[n] 个字 -> 输入的第 sources[n] 个字
+        int[] indices = new int[bestCount];
+        int[] sources = new int[bestCount];
+        int currentDictIdx = 0;
+        int n = 0;
+        for (int j = bestStart; j < inputMasks.length && n < bestCount; j++) {
+            int foundAt = findOrdered(store, fuzzyMasks[j], base, charCount, currentDictIdx);
+            if (foundAt != -1) {
+                indices[n] = foundAt;
+                sources[n++] = j;
+                currentDictIdx = foundAt + 1;
+            }
+        }
+        return new MatchResult(entry, -1, bestCount, bestScore, indices, sources);
+    }
+
+    /**
+     * 从 from 开始找第一个与输入字读音相交的字典字下标，找不到返回 -1
+     */
+    private static int findOrdered(ItemStore store, long[] inPy, int base, int charCount, int from) {
+        for (int k = from; k < charCount; k++) {
+            if (store.intersects(inPy, base + k)) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 无序匹配 (贪心算法，替换字符)
+     * 字典字的占用情况记在按线程复用的数组里，被淘汰的候选不分配对象
+     */
+    MatchResult calculateUnorderedMatch(ItemStore store, long[][] inputMasks, long[][] fuzzyMasks, int entry, int minLimit) {
+        int base = store.charStart(entry);
+        int charCount = store.charCount(entry);
+        // 字典第 k 个字被输入的第 sourceOf[k] 个字替换，-1 表示未使用
+        int[] sourceOf = UNORDERED_SCRATCH.get();
+        if (sourceOf.length < charCount) {
+            sourceOf = new int[Math.max(charCount, sourceOf.length * 2)];
+            UNORDERED_SCRATCH.set(sourceOf);
+        }
+        Arrays.fill(sourceOf, 0, charCount, -1);
+        int matchCount = 0;
+        int score = 0;
+
+        for (int j = 0; j < inputMasks.length; j++) {
+            long[] inPy = fuzzyMasks[j];
+            for (int k = 0; k < charCount; k++) {
+                if (sourceOf[k] < 0 && store.intersects(inPy, base + k)) {
+                    sourceOf[k] = j;
+                    matchCount++;
+                    score += hitScore(store, inputMasks[j], inPy, base + k);
+                    break;
+                }
+            }
+        }
+
+        if (matchCount >= minLimit) {
+            int[] indices = new int[matchCount];
+            int[] sources = new int[matchCount];
+            int n = 0;
+            for (int k = 0; k < charCount; k++) {
+                if (sourceOf[k] >= 0) {
+                    indices[n] = k;
+                    sources[n++] = sourceOf[k];
+                }
+            }
+            return new MatchResult(entry, -1, matchCount, score, indices, sources);
+        }
+        return null;
+    }
+
+    /**
+     * 已按模糊位图命中的字，读音完全相同时得全分，否则得模糊音分
+     */
+    private static int hitScore(ItemStore store, long[] exactMask, long[] fuzzyMask, int c) {
+        return exactMask == fuzzyMask || store.intersects(exactMask, c) ? EXACT_HIT_SCORE : FUZZY_HIT_SCORE;
+    }
+
+    /**
+     * 字符串替换工具：将 itemText 中被匹配的字替换为 input 中的字
+     */
+    private String constructPlainString(String originText, int[] indices, int[] sources, String inputWord) {
+        if (indices == null || indices.length == 0) {
+            return originText;
+        }
+        StringBuilder sb = new StringBuilder(originText);
+        for (int i = 0; i < indices.length; i++) {
+            int index = indices[i];
+            if (index >= 0 && index < sb.length()) {
+                sb.setCharAt(index, inputWord.charAt(sources[i]));
+            }
+        }
+        return sb.toString();
+    }
+
+    // ----------------- 加载与工具区 -----------------
+
+    // 词库文件均为流式读取，逐条解析后直接建索引，不整体读入内存
+
+    private void loadJsonNormal(PunProperties.DictConfig config, List<DictItem> target) {
+        Set<String> fields = new HashSet<>(Arrays.asList(config.getKeyField(), config.getExtraField()));
+        JsonRecordReader.forEach(ResourceUtil.getStream(config.getPath()), fields, record -> {
+            String text = record.get(config.getKeyField());
+            String extra = config.getExtraField() != null ? record.get(config.getExtraField()) : "";
+            if (text != null && !text.trim().isEmpty()) {
+                addToIndex(target, text, config.getName(), extra, config.getDefaultFreq());
+            }
+        });
+    }
+
+    private void loadJsonXiehouyu(PunProperties.DictConfig config, List<DictItem> target) {
+        JsonRecordReader.forEach(ResourceUtil.getStream(config.getPath()), XIEHOUYU_FIELDS, record -> {
+            String riddle = record.get("riddle");
+            String answer = record.get("answer");
+            if (StrUtil.isNotBlank(riddle) && StrUtil.isNotBlank(answer)) {
+                addToIndex(target, answer, config.getName(), riddle, config.getDefaultFreq());
+            }
+        });
+    }
+
+    private void loadThuoclData(PunProperties.DictConfig config, List<DictItem> target) throws IOException {
+        try (BufferedReader reader = ResourceUtil.getUtf8Reader(config.getPath())) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                List<String> parts = StrSplitter.split(line, "\t", true, true);
+                if (parts.size() < 2) continue;
+                String text = parts.get(0);
+                if (text.length() < 2) continue;
+                try {
+                    int frequency = Integer.parseInt(parts.get(1));
+                    addToIndex(target, text, config.getName(), "", frequency);
+                } catch (NumberFormatException e) { /* ignore */ }
+            }
+        }
+    }
+
+    private void addToIndex(List<DictItem> target, String text, String type, String extra, int frequency) {
+        List<short[]> pinyinsList = getStringPinyins(text);
+        if (pinyinsList.isEmpty()) return;
+
+        target.add(new DictItem(text, type, extra, frequency, pinyinsList.toArray(new short[0][])));
+    }
+
+    /**
+     * 获取每个字的读音音节 ID（已排序，数组与查找表共享，不可修改），非汉字跳过
+     */
+    List<short[]> getStringPinyins(String str) {
+        List<short[]> list = new ArrayList<>(str.length());
+        for (int i = 0; i < str.length(); i++) {
+            short[] ids = pinyinTable.get(str.charAt(i));
+            if (ids != null) {
+                list.add(ids);
             }
         }
         return list;
@@ -0,0 +1,392 @@
+package com.github.oilvegetable.pun_generator.service.impl;
+
+import com.github.oilvegetable.pun_generator.config.PunProperties;
+import com.github.oilvegetable.pun_generator.metrics.PunMetrics;
+import com.github.oilvegetable.pun_generator.service.PunService;
+import com.github.oilvegetable.pun_generator.service.SearchBudget;
+import com.github.oilvegetable.pun_generator.vo.PunPage;
+import com.github.oilvegetable.pun_generator.vo.PunResult;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * 分片部署的协调者：将生成请求按分类拆给负责的分片 (pun.shards) 并行请求，本实例负责的分类在请求线程内计算，
+ * 最后按 searchOrder 合并为与单机相同的形式；分页与流式生成同样转发。
+ * 分片超时或出错时对应分类返回空结果，并将预算标记为 truncated
+ */
+@Service
+public class ShardCoordinator {
+
+    // 分片返回的结果不完整时的响应头，与 PunController 一致
+    private static final String TRUNCATED_HEADER = "X-Pun-Truncated";
+    private static final ParameterizedTypeReference<Map<String, List<PunResult>>> RESULT_TYPE = new ParameterizedTypeReference<>() {
+    };
+    private static final ParameterizedTypeReference<PunPage> PAGE_TYPE = new ParameterizedTypeReference<>() {
+    };
+    // 分片游标的前缀分隔符，本实例的游标 (Base64url) 不含该字符
+    private static final char CURSOR_SEPARATOR = '.';
+
+    @Autowired
+    private PunService punService;
+    @Autowired
+    private PunProperties punProperties;
+    @Autowired
+    private PunMetrics punMetrics;
+
+    private RestClient restClient;
+
+    // 分片请求的线程池，请求大多在等待网络，线程数随并发增长
+    private final ExecutorService shardExecutor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "pun-shard");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    public void init() {
+        HttpClient.Builder httpClient = HttpClient.newBuilder();
+        if (punProperties.getShardTimeoutMs() > 0) {
+            httpClient.connectTimeout(Duration.ofMillis(punProperties.getShardTimeoutMs()));
+        }
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient.build());
+        if (punProperties.getShardTimeoutMs() > 0) {
+            requestFactory.setReadTimeout(Duration.ofMillis(punProperties.getShardTimeoutMs()));
+        }
+        restClient = RestClient.builder().requestFactory(requestFactory).build();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        shardExecutor.shutdownNow();
+    }
+
+    /**
+     * 配置了分片时由本实例协调，否则直接在本地生成
+     */
+    public boolean isEnabled() {
+        return punProperties.getShards() != null && !punProperties.getShards().isEmpty();
+    }
+
+    /**
+     * 与 PunService.generatePun 相同，分片的分类由分片计算；分片超时或出错时将 budget 标记为 truncated
+     */
+    public Map<String, List<PunResult>> generatePun(String inputWord, List<String> targetTypes, boolean ignoreOrder, SearchBudget budget) {
+        List<String> searchTypes = searchTypes(targetTypes);
+        List<String> localTypes = new ArrayList<>();
+        Map<PunProperties.ShardConfig, List<String>> shardTypes = splitByShard(searchTypes, localTypes);
+
+        long timeoutMs = shardTimeoutMs(budget);
+        Map<PunProperties.ShardConfig, CompletableFuture<Map<String, List<PunResult>>>> futures = new LinkedHashMap<>();
+        shardTypes.forEach((shard, types) -> futures.put(shard, request(shard,
+                shardUri(shard, inputWord, types, ignoreOrder, budget).build().encode().toUri(), RESULT_TYPE, timeoutMs, budget)));
+
+        Map<String, List<PunResult>> gathered = new HashMap<>();
+        if (!localTypes.isEmpty()) {
+            gathered.putAll(punService.generatePun(inputWord, localTypes, ignoreOrder, budget));
+        }
+        futures.forEach((shard, future) -> {
+            Map<String, List<PunResult>> results = join(shard, future, budget);
+            if (results != null) gathered.putAll(results);
+        });
+
+        Map<String, List<PunResult>> resultMap = new LinkedHashMap<>();
+        for (String type : searchTypes) {
+            resultMap.put(type, gathered.getOrDefault(type, new ArrayList<>()));
+        }
+        return resultMap;
+    }
+
+    /**
+     * 与 PunService.generatePunPage 相同。首页并行请求各分片的首页；分片返回的游标加上分片序号前缀 ("序号.游标")，
+     * 翻页时据此转发给同一分片 (分类与首页相同，分片的分页会话可以沿用)，不带前缀的游标属于本实例
+     */
+    public PunPage generatePunPage(String inputWord, List<String> targetTypes, boolean ignoreOrder, int limit, String cursor, SearchBudget budget) {
+        List<String> searchTypes = searchTypes(targetTypes);
+        List<String> localTypes = new ArrayList<>();
+        Map<PunProperties.ShardConfig, List<String>> shardTypes = splitByShard(searchTypes, localTypes);
+        long timeoutMs = shardTimeoutMs(budget);
+
+        // 翻页：只请求游标所属的实例
+        if (cursor != null && cursor.indexOf(CURSOR_SEPARATOR) > 0) {
+            int split = cursor.indexOf(CURSOR_SEPARATOR);
+            PunProperties.ShardConfig shard = shardAt(cursor.substring(0, split));
+            if (shard != null && shardTypes.containsKey(shard)) {
+                URI uri = shardUri(shard, inputWord, shardTypes.get(shard), ignoreOrder, budget)
+                        .queryParam("limit", limit)
+                        .queryParam("cursor", cursor.substring(split + 1))
+                        .build().encode().toUri();
+                PunPage page = join(shard, request(shard, uri, PAGE_TYPE, timeoutMs, budget), budget);
+                if (page == null) {
+                    return new PunPage(new LinkedHashMap<>(), new LinkedHashMap<>(), new LinkedHashMap<>(), true);
+                }
+                prefixCursors(page, shard);
+                page.setTruncated(page.isTruncated() || budget.isTruncated());
+                return page;
+            }
+            // 分片配置已变化，按首页处理
+            cursor = null;
+        }
+        if (cursor != null && !localTypes.isEmpty()) {
+            return punService.generatePunPage(inputWord, localTypes, ignoreOrder, limit, cursor, budget);
+        }
+
+        Map<PunProperties.ShardConfig, CompletableFuture<PunPage>> futures = new LinkedHashMap<>();
+        shardTypes.forEach((shard, types) -> futures.put(shard, request(shard,
+                shardUri(shard, inputWord, types, ignoreOrder, budget).queryParam("limit", limit).build().encode().toUri(),
+                PAGE_TYPE, timeoutMs, budget)));
+
+        List<PunPage> pages = new ArrayList<>();
+        if (!localTypes.isEmpty()) {
+            pages.add(punService.generatePunPage(inputWord, localTypes, ignoreOrder, limit, null, budget));
+        }
+        futures.forEach((shard, future) -> {
+            PunPage page = join(shard, future, budget);
+            if (page != null) {
+                prefixCursors(page, shard);
+                pages.add(page);
+            }
+        });
+
+        PunPage merged = new PunPage(new LinkedHashMap<>(), new LinkedHashMap<>(), new LinkedHashMap<>(), false);
+        for (String type : searchTypes) {
+            merged.getResults().put(type, new ArrayList<>());
+            merged.getTotals().put(type, 0);
+            merged.getCursors().put(type, null);
+        }
+        for (PunPage page : pages) {
+            if (page.getResults() != null) page.getResults().forEach((type, list) -> merged.getResults().replace(type, list));
+            if (page.getTotals() != null) page.getTotals().forEach((type, total) -> merged.getTotals().replace(type, total));
+            if (page.getCursors() != null) page.getCursors().forEach((type, next) -> merged.getCursors().replace(type, next));
+            if (page.isTruncated()) budget.markTruncated();
+        }
+        merged.setTruncated(budget.isTruncated());
+        return merged;
+    }
+
+    /**
+     * 与 PunService.generatePunStream 的回调形式相同：本实例的分类经本地流式生成逐个回调，
+     * 每个分片的分类在该分片响应后立即回调，不等待其他实例。分类按完成先后到达 (同一实例内按 searchOrder)，回调串行进行；
+     * 分片超时或出错时其分类回调空结果并标记 truncated
+     */
+    public CompletableFuture<Void> generatePunStream(String inputWord, List<String> targetTypes, boolean ignoreOrder, int limit, SearchBudget budget, Consumer<PunPage> onType) {
+        List<String> searchTypes = searchTypes(targetTypes);
+        List<String> localTypes = new ArrayList<>();
+        Map<PunProperties.ShardConfig, List<String>> shardTypes = splitByShard(searchTypes, localTypes);
+        long timeoutMs = shardTimeoutMs(budget);
+
+        // 本地与各分片的回调来自不同线程，串行后再交给调用方
+        Object lock = new Object();
+        Consumer<PunPage> emit = page -> {
+            synchronized (lock) {
+                onType.accept(page);
+            }
+        };
+
+        List<CompletableFuture<Void>> parts = new ArrayList<>();
+        shardTypes.forEach((shard, types) -> {
+            UriComponentsBuilder uri = shardUri(shard, inputWord, types, ignoreOrder, budget);
+            CompletableFuture<PunPage> page = limit > 0
+                    ? request(shard, uri.queryParam("limit", limit).build().encode().toUri(), PAGE_TYPE, timeoutMs, budget)
+                    : request(shard, uri.build().encode().toUri(), RESULT_TYPE, timeoutMs, budget).thenApply(ShardCoordinator::fullPage);
+            // 超时由计时线程完成 future，回调会写客户端连接，放回 shardExecutor 上执行
+            parts.add(orNull(shard, page, budget).thenAcceptAsync(p -> emitTypes(shard, types, p, budget, emit), shardExecutor));
+        });
+        // 本地的拼音转换与候选筛选在请求线程内进行，分片请求此时已经发出
+        if (!localTypes.isEmpty()) {
+            parts.add(punService.generatePunStream(inputWord, localTypes, ignoreOrder, limit, budget, emit));
+        }
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * 将一个分片的结果按分类逐个回调，分片没有返回结果 (page 为 null) 时各分类回调空结果
+     */
+    private void emitTypes(PunProperties.ShardConfig shard, List<String> types, PunPage page, SearchBudget budget, Consumer<PunPage> emit) {
+        if (page != null) prefixCursors(page, shard);
+        for (String type : types) {
+            List<PunResult> results = page == null || page.getResults() == null ? null : page.getResults().get(type);
+            Integer total = page == null || page.getTotals() == null ? null : page.getTotals().get(type);
+            Map<String, List<PunResult>> typeResults = new LinkedHashMap<>();
+            typeResults.put(type, results != null ? results : new ArrayList<>());
+            Map<String, Integer> totals = new LinkedHashMap<>();
+            totals.put(type, total != null ? total : 0);
+            Map<String, String> cursors = new LinkedHashMap<>();
+            cursors.put(type, page == null || page.getCursors() == null ? null : page.getCursors().get(type));
+            emit.accept(new PunPage(typeResults, totals, cursors, budget.isTruncated()));
+        }
+    }
+
+    /**
+     * 不分页的全部结果转为 PunPage (总数即结果数，没有游标)
+     */
+    private static PunPage fullPage(Map<String, List<PunResult>> results) {
+        if (results == null) return null;
+        PunPage page = new PunPage(results, new LinkedHashMap<>(), new LinkedHashMap<>(), false);
+        results.forEach((type, list) -> {
+            page.getTotals().put(type, list.size());
+            page.getCursors().put(type, null);
+        });
+        return page;
+    }
+
+    /**
+     * 所给分类 (为空表示全部分类) 中是否有分片负责的分类；批量、整句扫描与边输入边搜索只在本实例计算，不能包含这些分类
+     */
+    public boolean touchesShards(List<String> targetTypes) {
+        for (String type : searchTypes(targetTypes)) {
+            if (ownerOf(type) != null) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 按负责的分片拆分分类 (保持 searchOrder 顺序)，未分配给分片的分类放入 localTypes
+     */
+    private Map<PunProperties.ShardConfig, List<String>> splitByShard(List<String> searchTypes, List<String> localTypes) {
+        Map<PunProperties.ShardConfig, List<String>> shardTypes = new LinkedHashMap<>();
+        for (String type : searchTypes) {
+            PunProperties.ShardConfig owner = ownerOf(type);
+            if (owner == null) {
+                localTypes.add(type);
+            } else {
+                shardTypes.computeIfAbsent(owner, k -> new ArrayList<>()).add(type);
+            }
+        }
+        return shardTypes;
+    }
+
+    /**
+     * 分片 /pun/generate 的公共参数，预算随请求下发
+     */
+    private UriComponentsBuilder shardUri(PunProperties.ShardConfig shard, String inputWord, List<String> types, boolean ignoreOrder, SearchBudget budget) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromUriString(shard.getUrl())
+                .path("/pun/generate")
+                .queryParam("word", inputWord)
+                .queryParam("types", types.toArray())
+                .queryParam("ignoreOrder", ignoreOrder);
+        if (budget.hasDeadline()) {
+            builder.queryParam("timeoutMs", Math.max(1, budget.remainingMillis()));
+        }
+        if (budget.getMaxCandidates() > 0) {
+            builder.queryParam("maxCandidates", budget.getMaxCandidates());
+        }
+        return builder;
+    }
+
+    /**
+     * 异步请求一个分片，响应头表明结果不完整时标记 budget
+     */
+    private <T> CompletableFuture<T> request(PunProperties.ShardConfig shard, URI uri, ParameterizedTypeReference<T> responseType,
+                                             long timeoutMs, SearchBudget budget) {
+        long start = System.nanoTime();
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> {
+            ResponseEntity<T> response = restClient.get().uri(uri).retrieve().toEntity(responseType);
+            if (Boolean.parseBoolean(response.getHeaders().getFirst(TRUNCATED_HEADER))) {
+                budget.markTruncated();
+            }
+            return response.getBody();
+        }, shardExecutor);
+        if (timeoutMs < Long.MAX_VALUE) {
+            future = future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        return future.whenComplete((r, e) -> punMetrics.recordShard(shard.getUrl(), System.nanoTime() - start,
+                e == null ? "ok" : unwrap(e) instanceof TimeoutException ? "timeout" : "error"));
+    }
+
+    /**
+     * 等待分片结果，超时或出错时返回 null 并标记 budget
+     */
+    private <T> T join(PunProperties.ShardConfig shard, CompletableFuture<T> future, SearchBudget budget) {
+        return orNull(shard, future, budget).join();
+    }
+
+    /**
+     * 分片超时或出错时以 null 正常完成，没有结果时标记 budget
+     */
+    private <T> CompletableFuture<T> orNull(PunProperties.ShardConfig shard, CompletableFuture<T> future, SearchBudget budget) {
+        return future.handle((result, e) -> {
+            if (e != null) {
+                System.err.println("分片请求失败，返回部分结果: " + shard.getUrl() + ", " + unwrap(e));
+            }
+            if (result == null) budget.markTruncated();
+            return result;
+        });
+    }
+
+    private void prefixCursors(PunPage page, PunProperties.ShardConfig shard) {
+        if (page.getCursors() == null) return;
+        String prefix = punProperties.getShards().indexOf(shard) + String.valueOf(CURSOR_SEPARATOR);
+        page.getCursors().replaceAll((type, next) -> next == null ? null : prefix + next);
+    }
+
+    private PunProperties.ShardConfig shardAt(String index) {
+        try {
+            int i = Integer.parseInt(index);
+            return i >= 0 && i < punProperties.getShards().size() ? punProperties.getShards().get(i) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 单个分片的超时：取配置与请求剩余时间预算中较小的，都不限时为 Long.MAX_VALUE
+     */
+    private long shardTimeoutMs(SearchBudget budget) {
+        long configured = punProperties.getShardTimeoutMs() > 0 ? punProperties.getShardTimeoutMs() : Long.MAX_VALUE;
+        return Math.min(configured, budget.remainingMillis());
+    }
+
+    /**
+     * 负责该分类的分片，本地计算时为 null
+     */
+    private PunProperties.ShardConfig ownerOf(String type) {
+        for (PunProperties.ShardConfig shard : punProperties.getShards()) {
+            if (shard.getDicts() != null && shard.getDicts().contains(type)) return shard;
+        }
+        return null;
+    }
+
+    /**
+     * 要搜索的分类 (去重)，按 searchOrder 排序；未指定时为全部分类，与单机的顺序一致。未配置的分类直接丢弃
+     */
+    private List<String> searchTypes(List<String> targetTypes) {
+        List<String> allTypes = punService.getAllTypesOrdered();
+        if (targetTypes == null || targetTypes.isEmpty()) {
+            return allTypes;
+        }
+        List<String> searchTypes = new ArrayList<>(new LinkedHashSet<>(targetTypes));
+        searchTypes.removeIf(t -> !allTypes.contains(t));
+        List<String> order = punProperties.getSearchOrder() != null ? punProperties.getSearchOrder() : List.of();
+        searchTypes.sort(Comparator.comparingInt(t -> order.contains(t) ? order.indexOf(t) : Integer.MAX_VALUE));
+        return searchTypes;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+}
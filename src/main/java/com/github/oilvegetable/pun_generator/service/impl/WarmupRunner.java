@@ -0,0 +1,72 @@
+package com.github.oilvegetable.pun_generator.service.impl;
+
+import com.github.oilvegetable.pun_generator.config.PunProperties;
+import com.github.oilvegetable.pun_generator.metrics.PunMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启动预热：索引构建完成后，用预热查询反复执行真实的匹配路径 (全部分类 x 有序 / 无序)，
+ * 让 JIT 编译热点代码、填充各类查找表，直到相邻两轮的吞吐稳定。
+ * ApplicationRunner 在应用就绪之前执行，预热结束前 readiness 保持 REFUSING_TRAFFIC，滚动发布时不会接到流量
+ */
+@Component
+public class WarmupRunner implements ApplicationRunner {
+
+    // 内置预热查询：1 / 2 / 4 / 8 字的常见与生僻输入，覆盖候选少与候选多的情况
+    private static final List<String> DEFAULT_QUERIES = List.of(
+            "是", "囧", "一世", "窘迫", "一生一世", "鬼斧神工", "一生一世只是一时", "穷困潦倒囧途窘迫");
+
+    @Autowired
+    private PunServiceImpl punService;
+    @Autowired
+    private PunProperties punProperties;
+    @Autowired
+    private PunMetrics punMetrics;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!punProperties.isWarmupEnabled()) return;
+        List<String> queries = punProperties.getWarmupQueries() != null && !punProperties.getWarmupQueries().isEmpty()
+                ? punProperties.getWarmupQueries()
+                : DEFAULT_QUERIES;
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(punProperties.getWarmupMaxMs());
+        int rounds = 0;
+        long executed = 0;
+        double lastThroughput = 0;
+        boolean stable = false;
+        try {
+            while (rounds < punProperties.getWarmupMaxRounds()) {
+                // 每轮取一次当前索引，不带缓存，保证每次都走完整的匹配路径
+                PunIndex idx = punService.currentIndex().uncached();
+                long roundStart = System.nanoTime();
+                for (String query : queries) {
+                    punService.warmUp(idx, query, true);
+                    punService.warmUp(idx, query, false);
+                }
+                long roundNanos = Math.max(1, System.nanoTime() - roundStart);
+                rounds++;
+                executed += queries.size() * 2L;
+
+                double throughput = queries.size() * 2e9 / roundNanos;
+                stable = rounds >= punProperties.getWarmupMinRounds() && lastThroughput > 0
+                        && Math.abs(throughput - lastThroughput) <= lastThroughput * punProperties.getWarmupStableRatio();
+                lastThroughput = throughput;
+                if (stable || System.nanoTime() - deadline >= 0) break;
+            }
+        } catch (RuntimeException e) {
+            // 预热失败不影响服务，直接就绪
+            System.err.println("预热失败: " + e.getMessage());
+        }
+        long elapsed = System.nanoTime() - start;
+        punMetrics.recordWarmup(elapsed, rounds, executed);
+        System.out.printf("预热完成，%d 轮 %d 次查询，耗时 %dms，%s%n", rounds, executed,
+                TimeUnit.NANOSECONDS.toMillis(elapsed), stable ? "吞吐已稳定" : "未等到吞吐稳定");
+    }
+}
@@ -0,0 +1,14 @@
+package com.github.oilvegetable.pun_generator.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DictStatus {
+    private String name;
+    private String status; // ready 已加载 / loading 加载中 / pending 未加载 (懒加载) / remote 由其他分片负责
+    private int count;     // 已加载的词条数
+}
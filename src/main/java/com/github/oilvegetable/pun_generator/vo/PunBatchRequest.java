@@ -0,0 +1,13 @@
+package com.github.oilvegetable.pun_generator.vo;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class PunBatchRequest {
+    private List<String> words;          // 输入列表
+    private List<String> types;          // 分类，为空表示全部
+    private boolean ignoreOrder = true;  // 是否忽略顺序
+    private int limit;                   // 每个分类最多返回的条数，<= 0 表示全部
+}
@@ -0,0 +1,18 @@
+package com.github.oilvegetable.pun_generator.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PunPage {
+    private Map<String, List<PunResult>> results; // 当前页结果
+    private Map<String, Integer> totals;          // 每个分类的结果总数；首页有下一页的分类只是下限，翻页时为完整总数
+    private Map<String, String> cursors;          // 每个分类下一页的游标，null 表示没有更多
+    private boolean truncated;                    // 超出时间或候选预算，结果不完整
+}
@@ -0,0 +1,17 @@
+package com.github.oilvegetable.pun_generator.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TypeaheadPage {
+    private String session;                       // 会话令牌，下一次输入时带上
+    private Map<String, List<PunResult>> results; // 每个分类的前 limit 条
+    private boolean incremental;                  // 是否在上一次输入的基础上增量计算
+}
@@ -3,7 +3,11 @@ package com.github.oilvegetable.pun_generator;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// 测试不做启动预热、不读写索引快照，避免拖慢测试并在工作区写入 data/pun-index.snap
+@SpringBootTest(properties = {
+		"pun.warmup-enabled=false",
+		"pun.snapshot-path="
+})
 class PunGeneratorApplicationTests {
 
 	@Test
@@ -0,0 +1,112 @@
+package com.github.oilvegetable.pun_generator.controller;
+
+import com.github.oilvegetable.pun_generator.config.PunProperties;
+import com.github.oilvegetable.pun_generator.service.PunService;
+import com.github.oilvegetable.pun_generator.service.SearchBudget;
+import com.github.oilvegetable.pun_generator.vo.PunPage;
+import com.github.oilvegetable.pun_generator.vo.PunResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MvcResult;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// 接口层的行为：流式推送顺序、重查询限流 (429) 与超出预算时的部分结果
+@SpringBootTest(properties = {
+		"pun.warmup-enabled=false",
+		"pun.snapshot-path="
+})
+@AutoConfigureMockMvc
+class PunControllerTests {
+
+	private static final JsonMapper MAPPER = JsonMapper.builder().build();
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private PunService punService;
+
+	@Autowired
+	private PunProperties punProperties;
+
+	@Test
+	void rejectsExpensiveSearchesWithoutPermits() throws Exception {
+		// 所有查询都算重查询，许可被占满时排队超时返回 429，许可释放后恢复
+		int threshold = punProperties.getExpensiveCandidates();
+		long queueTimeout = punProperties.getExpensiveQueueTimeoutMs();
+		Semaphore permits = (Semaphore) ReflectionTestUtils.getField(punService, "expensiveSearches");
+		punProperties.setExpensiveCandidates(1);
+		punProperties.setExpensiveQueueTimeoutMs(50);
+		int drained = permits.drainPermits();
+		try {
+			mockMvc.perform(get("/pun/generate").param("word", "穷困潦倒"))
+					.andExpect(status().isTooManyRequests());
+		} finally {
+			permits.release(drained);
+			punProperties.setExpensiveCandidates(threshold);
+			punProperties.setExpensiveQueueTimeoutMs(queueTimeout);
+		}
+		mockMvc.perform(get("/pun/generate").param("word", "穷困潦倒"))
+				.andExpect(status().isOk());
+	}
+
+	@Test
+	void marksResultsTruncatedWhenCandidateBudgetRunsOut() throws Exception {
+		mockMvc.perform(get("/pun/generate").param("word", "鬼斧神工").param("maxCandidates", "1"))
+				.andExpect(status().isOk())
+				.andExpect(header().string("X-Pun-Truncated", "true"));
+		mockMvc.perform(get("/pun/generate").param("word", "鬼斧神工"))
+				.andExpect(status().isOk())
+				.andExpect(header().string("X-Pun-Truncated", "false"));
+	}
+
+	@Test
+	void streamEmitsTypesInSearchOrder() throws Exception {
+		// 请求时打乱分类顺序，推送仍按 searchOrder
+		List<String> types = new ArrayList<>(punService.getDefaultSelectedTypes());
+		Collections.reverse(types);
+		List<String> expectedOrder = new ArrayList<>(punService.getAllTypesOrdered());
+		expectedOrder.retainAll(types);
+		Map<String, List<PunResult>> full = punService.generatePun("一生一世", types, true, SearchBudget.unlimited());
+
+		MvcResult result = mockMvc.perform(get("/pun/generate/stream")
+						.param("word", "一生一世")
+						.param("types", types.toArray(new String[0])))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		result.getAsyncResult(30_000);
+
+		List<String> events = new ArrayList<>();
+		List<String> order = new ArrayList<>();
+		for (String line : result.getResponse().getContentAsString(StandardCharsets.UTF_8).split("\n")) {
+			if (line.startsWith("event:")) {
+				events.add(line.substring("event:".length()));
+			} else if (line.startsWith("data:") && "page".equals(events.get(events.size() - 1))) {
+				PunPage page = MAPPER.readValue(line.substring("data:".length()), PunPage.class);
+				assertEquals(1, page.getResults().size());
+				String type = page.getResults().keySet().iterator().next();
+				order.add(type);
+				assertEquals(full.get(type), page.getResults().get(type), type);
+			}
+		}
+		assertEquals(expectedOrder, order);
+		assertEquals("done", events.get(events.size() - 1));
+	}
+}
@@ -0,0 +1,122 @@
+package com.github.oilvegetable.pun_generator.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 模糊音等价类：逐对判断、逐个音节求位图的结果对照
+class FuzzyPinyinTests {
+
+	private static final List<String> SYLLABLES = List.of(
+			"zi", "zhi", "ci", "chi", "si", "shi", "zan", "zhan", "zang", "zhang", "can", "chang",
+			"nan", "lan", "nang", "lang", "nian", "lian", "niang", "liang", "ning", "ling", "nin", "lin",
+			"zhen", "shen", "sheng", "sen", "seng", "chuan", "chuang", "cuan", "a", "an", "ang", "er", "yi", "wu");
+	private static final List<String> RULES = List.of("z=zh", "c=ch", "s=sh", "n=l", "an=ang", "en=eng", "in=ing");
+
+	@Test
+	void groupsSyllablesByRules() {
+		FuzzyPinyin fuzzy = FuzzyPinyin.of(table(), RULES);
+		assertTrue(fuzzy.isEnabled());
+		assertTrue(same(fuzzy, "zi", "zhi"));
+		assertTrue(same(fuzzy, "zan", "zhang"));
+		assertTrue(same(fuzzy, "nian", "liang"));
+		assertTrue(same(fuzzy, "cuan", "chuang"));
+		assertTrue(same(fuzzy, "sen", "sheng"));
+		assertTrue(same(fuzzy, "nin", "ling"));
+		assertTrue(same(fuzzy, "an", "ang"));
+		assertFalse(same(fuzzy, "zi", "ci"));
+		assertFalse(same(fuzzy, "zhan", "zhen"));
+		assertFalse(same(fuzzy, "lian", "lin"));
+		assertFalse(same(fuzzy, "a", "an"));
+	}
+
+	@Test
+	void classesDoNotDependOnRuleOrder() {
+		SyllableTable table = table();
+		FuzzyPinyin expected = FuzzyPinyin.of(table, RULES);
+		Random random = new Random(42);
+		for (int round = 0; round < 20; round++) {
+			List<String> rules = new ArrayList<>(RULES);
+			Collections.shuffle(rules, random);
+			FuzzyPinyin shuffled = FuzzyPinyin.of(table, rules);
+			assertEquals(expected.getClassCount(), shuffled.getClassCount());
+			for (int a = 0; a < SYLLABLES.size(); a++) {
+				for (int b = 0; b < SYLLABLES.size(); b++) {
+					assertEquals(same(expected, a, b), same(shuffled, a, b), SYLLABLES.get(a) + " / " + SYLLABLES.get(b));
+				}
+			}
+		}
+	}
+
+	@Test
+	void classesAndMasksMatchPairwiseComparison() {
+		SyllableTable table = table();
+		FuzzyPinyin fuzzy = FuzzyPinyin.of(table, RULES);
+		Random random = new Random(7);
+		for (int q = 0; q < 500; q++) {
+			short[] ids = new short[1 + random.nextInt(3)];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = (short) random.nextInt(SYLLABLES.size());
+			}
+
+			// 等价类：逐个转换后排序去重
+			TreeSet<Short> classes = new TreeSet<>();
+			for (short id : ids) {
+				classes.add(fuzzy.toClasses(new short[]{id})[0]);
+			}
+			short[] expectedClasses = new short[classes.size()];
+			int n = 0;
+			for (short c : classes) {
+				expectedClasses[n++] = c;
+			}
+			assertArrayEquals(expectedClasses, fuzzy.toClasses(ids));
+
+			// 模糊位图：与任一读音同类的全部音节
+			long[] expectedMask = new long[table.maskWords()];
+			for (int s = 0; s < SYLLABLES.size(); s++) {
+				for (short id : ids) {
+					if (same(fuzzy, s, id)) {
+						expectedMask[s >>> 6] |= 1L << s;
+					}
+				}
+			}
+			assertArrayEquals(expectedMask, fuzzy.toFuzzyMask(ids, table.toMask(ids)));
+		}
+	}
+
+	@Test
+	void disabledWithoutRules() {
+		SyllableTable table = table();
+		FuzzyPinyin fuzzy = FuzzyPinyin.of(table, Collections.emptyList());
+		assertFalse(fuzzy.isEnabled());
+		assertEquals(SYLLABLES.size(), fuzzy.getClassCount());
+		short[] ids = {3, 1};
+		long[] mask = table.toMask(ids);
+		assertSame(ids, fuzzy.toClasses(ids));
+		assertSame(mask, fuzzy.toFuzzyMask(ids, mask));
+		// 格式不正确的规则忽略
+		assertFalse(FuzzyPinyin.of(table, List.of("z", "=zh", "a=a")).isEnabled());
+	}
+
+	private static SyllableTable table() {
+		return new SyllableTable(SYLLABLES);
+	}
+
+	private static boolean same(FuzzyPinyin fuzzy, String a, String b) {
+		return same(fuzzy, SYLLABLES.indexOf(a), SYLLABLES.indexOf(b));
+	}
+
+	private static boolean same(FuzzyPinyin fuzzy, int a, int b) {
+		return fuzzy.toClasses(new short[]{(short) a})[0] == fuzzy.toClasses(new short[]{(short) b})[0];
+	}
+}
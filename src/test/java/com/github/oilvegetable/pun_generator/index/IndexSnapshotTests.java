@@ -0,0 +1,157 @@
+package com.github.oilvegetable.pun_generator.index;
+
+import com.github.oilvegetable.pun_generator.config.PunProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// 快照写入再读回，与内存中的索引逐列对照
+class IndexSnapshotTests {
+
+	private static final long CHECKSUM = 12345L;
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void readsBackWhatWasWritten() throws IOException {
+		IndexSnapshot written = randomSnapshot(new Random(42));
+		Path path = dir.resolve("pun-index.snap");
+		written.write(path, CHECKSUM);
+		IndexSnapshot read = IndexSnapshot.read(path, CHECKSUM);
+
+		assertEquals(written.getSyllableTable().getSyllables(), read.getSyllableTable().getSyllables());
+
+		ItemStore expected = written.getItemStore();
+		ItemStore actual = read.getItemStore();
+		assertEquals(expected.getTypes(), actual.getTypes());
+		assertArrayEquals(expected.textArena(), actual.textArena());
+		assertArrayEquals(expected.textOffsets(), actual.textOffsets());
+		assertArrayEquals(expected.charOffsets(), actual.charOffsets());
+		assertArrayEquals(expected.readingOffsets(), actual.readingOffsets());
+		assertArrayEquals(expected.syllableArena(), actual.syllableArena());
+		assertArrayEquals(expected.memberEntries(), actual.memberEntries());
+		assertArrayEquals(expected.memberTypes(), actual.memberTypes());
+		assertArrayEquals(expected.memberFrequencies(), actual.memberFrequencies());
+		// 空的附加信息不写入快照，读回为 null
+		for (int m = 0; m < expected.getMemberCount(); m++) {
+			String extra = expected.extraOf(m);
+			assertEquals(extra == null || extra.isEmpty() ? null : extra, actual.extraOf(m));
+		}
+
+		assertEquals(written.getPostingIndex().getItemCount(), read.getPostingIndex().getItemCount());
+		assertArrayEquals(written.getPostingIndex().offsets(), read.getPostingIndex().offsets());
+		assertArrayEquals(written.getPostingIndex().postings(), read.getPostingIndex().postings());
+
+		PhraseAutomaton automaton = written.getPhraseAutomaton();
+		PhraseAutomaton readAutomaton = read.getPhraseAutomaton();
+		assertArrayEquals(automaton.edgeStart(), readAutomaton.edgeStart());
+		assertArrayEquals(automaton.edgeSymbols(), readAutomaton.edgeSymbols());
+		assertArrayEquals(automaton.edgeChildren(), readAutomaton.edgeChildren());
+		assertArrayEquals(automaton.fail(), readAutomaton.fail());
+		assertArrayEquals(automaton.outputLink(), readAutomaton.outputLink());
+		assertArrayEquals(automaton.outputStart(), readAutomaton.outputStart());
+		assertArrayEquals(automaton.outputs(), readAutomaton.outputs());
+		assertArrayEquals(automaton.depths(), readAutomaton.depths());
+	}
+
+	@Test
+	void ignoresMissingOrStaleSnapshots() throws IOException {
+		Path path = dir.resolve("pun-index.snap");
+		assertNull(IndexSnapshot.read(path, CHECKSUM));
+		randomSnapshot(new Random(7)).write(path, CHECKSUM);
+		assertNull(IndexSnapshot.read(path, CHECKSUM + 1));
+	}
+
+	@Test
+	void rejectsTruncatedSnapshots() throws IOException {
+		Path path = dir.resolve("pun-index.snap");
+		randomSnapshot(new Random(7)).write(path, CHECKSUM);
+		byte[] bytes = Files.readAllBytes(path);
+		for (int length : new int[]{bytes.length - 1, bytes.length / 2, 20}) {
+			Path truncated = dir.resolve("truncated-" + length + ".snap");
+			Files.write(truncated, Arrays.copyOf(bytes, length));
+			assertThrows(IOException.class, () -> IndexSnapshot.read(truncated, CHECKSUM));
+		}
+	}
+
+	@Test
+	void checksumFollowsDictFiles() throws IOException {
+		Path dict = dir.resolve("dict.txt");
+		PunProperties.DictConfig dictConfig = new PunProperties.DictConfig();
+		dictConfig.setName("词库");
+		dictConfig.setPath(dict.toString());
+		PunProperties.GroupConfig group = new PunProperties.GroupConfig();
+		group.setDicts(List.of(dictConfig));
+		PunProperties properties = new PunProperties();
+		properties.setGroups(List.of(group));
+
+		long missing = IndexSnapshot.checksum(properties);
+		Files.writeString(dict, "一生一世\n");
+		long written = IndexSnapshot.checksum(properties);
+		assertNotEquals(missing, written);
+		assertEquals(written, IndexSnapshot.checksum(properties));
+		Files.writeString(dict, "一生一世\n鬼斧神工\n");
+		assertNotEquals(written, IndexSnapshot.checksum(properties));
+	}
+
+	/**
+	 * 随机词条：部分文本在多个分类中重复出现，部分带附加信息与多音字
+	 */
+	private static IndexSnapshot randomSnapshot(Random random) {
+		List<String> syllables = new ArrayList<>();
+		for (int s = 0; s < 20; s++) {
+			syllables.add("s" + s);
+		}
+		SyllableTable syllableTable = new SyllableTable(syllables);
+		List<String> types = List.of("成语", "诗歌", "歇后语");
+		List<String> texts = new ArrayList<>();
+		ItemStore.Builder storeBuilder = new ItemStore.Builder();
+		PostingIndex.Builder postingBuilder = new PostingIndex.Builder();
+		List<short[][]> pinyinsOf = new ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			String text;
+			short[][] pinyins;
+			if (!texts.isEmpty() && random.nextInt(5) == 0) {
+				int existing = random.nextInt(texts.size());
+				text = texts.get(existing);
+				pinyins = pinyinsOf.get(existing);
+			} else {
+				int length = 1 + random.nextInt(5);
+				StringBuilder sb = new StringBuilder();
+				pinyins = new short[length][];
+				for (int k = 0; k < length; k++) {
+					sb.append((char) ('一' + random.nextInt(2000)));
+					pinyins[k] = random.nextInt(5) == 0
+							? new short[]{(short) random.nextInt(10), (short) (10 + random.nextInt(10))}
+							: new short[]{(short) random.nextInt(20)};
+				}
+				text = sb.toString();
+			}
+			String extra = random.nextInt(4) == 0 ? "附加" + i : random.nextBoolean() ? "" : null;
+			int entry = storeBuilder.add(new DictItem(text, types.get(random.nextInt(types.size())), extra, random.nextInt(1000), pinyins));
+			if (entry == texts.size()) {
+				texts.add(text);
+				pinyinsOf.add(pinyins);
+				postingBuilder.add(entry, pinyins);
+			}
+		}
+		ItemStore store = storeBuilder.build();
+		return new IndexSnapshot(syllableTable, store, postingBuilder.build(syllableTable.size()),
+				PhraseAutomaton.build(store, FuzzyPinyin.of(syllableTable, Collections.emptyList())));
+	}
+}
@@ -0,0 +1,75 @@
+package com.github.oilvegetable.pun_generator.index;
+
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// 流式读取与整体反序列化的结果对照
+class JsonRecordReaderTests {
+
+	@Test
+	void streamingMatchesFullParse() throws Exception {
+		Set<String> fields = Set.of("riddle", "answer");
+		List<Map<String, String>> streamed = read("xinhua/xiehouyu.json", fields);
+
+		List<Map<String, String>> expected = new ArrayList<>();
+		try (InputStream in = resource("xinhua/xiehouyu.json")) {
+			for (Object element : JsonMapper.builder().build().readValue(in, List.class)) {
+				if (!(element instanceof Map<?, ?> object)) continue;
+				Map<String, String> record = new HashMap<>();
+				object.forEach((name, value) -> {
+					if (fields.contains(name) && value != null && !(value instanceof Map) && !(value instanceof List)) {
+						record.put((String) name, String.valueOf(value));
+					}
+				});
+				expected.add(record);
+			}
+		}
+		assertEquals(expected, streamed);
+	}
+
+	@Test
+	void skipsUnselectedAndNestedValues() {
+		String json = "[{\"word\": \"一生一世\", \"extra\": {\"word\": \"嵌套\"}, \"list\": [1, {\"a\": 2}], \"explanation\": null},"
+				+ " 3, [\"x\"], {\"word\": \"鬼斧神工\", \"explanation\": \"说明\", \"freq\": 12}]";
+		List<Map<String, String>> records = read(json.getBytes(StandardCharsets.UTF_8), Set.of("word", "explanation", "freq"));
+		assertEquals(List.of(
+				Map.of("word", "一生一世"),
+				Map.of("word", "鬼斧神工", "explanation", "说明", "freq", "12")), records);
+	}
+
+	@Test
+	void rejectsTruncatedInput() {
+		byte[] json = "[{\"word\": \"一生一世\"}, {\"word\": \"鬼斧".getBytes(StandardCharsets.UTF_8);
+		assertThrows(RuntimeException.class, () -> read(json, Set.of("word")));
+		assertThrows(IllegalArgumentException.class, () -> read("{\"word\": \"一生一世\"}".getBytes(StandardCharsets.UTF_8), Set.of("word")));
+	}
+
+	private static List<Map<String, String>> read(String path, Set<String> fields) {
+		List<Map<String, String>> records = new ArrayList<>();
+		// 回调中的 Map 会被复用，需要复制
+		JsonRecordReader.forEach(resource(path), fields, record -> records.add(new HashMap<>(record)));
+		return records;
+	}
+
+	private static List<Map<String, String>> read(byte[] json, Set<String> fields) {
+		List<Map<String, String>> records = new ArrayList<>();
+		JsonRecordReader.forEach(new ByteArrayInputStream(json), fields, record -> records.add(new HashMap<>(record)));
+		return records;
+	}
+
+	private static InputStream resource(String path) {
+		return JsonRecordReaderTests.class.getClassLoader().getResourceAsStream(path);
+	}
+}
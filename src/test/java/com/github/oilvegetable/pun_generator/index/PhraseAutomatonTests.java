@@ -0,0 +1,107 @@
+package com.github.oilvegetable.pun_generator.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 自动机扫描与逐段枚举的结果对照
+class PhraseAutomatonTests {
+
+	private static final int SYMBOLS = 6;
+
+	@Test
+	void scanMatchesSpanEnumeration() {
+		Random random = new Random(42);
+		for (int round = 0; round < 20; round++) {
+			short[][][] entries = new short[100][][];
+			PhraseAutomaton.Builder builder = new PhraseAutomaton.Builder();
+			for (int entry = 0; entry < entries.length; entry++) {
+				int length = PhraseAutomaton.MIN_LENGTH + random.nextInt(3);
+				entries[entry] = new short[length][];
+				for (int k = 0; k < length; k++) {
+					entries[entry][k] = randomSymbols(random, random.nextInt(4) == 0 ? 2 : 1);
+				}
+				builder.add(entry, entries[entry]);
+			}
+			PhraseAutomaton automaton = builder.build();
+
+			for (int q = 0; q < 50; q++) {
+				short[][] input = new short[1 + random.nextInt(12)][];
+				for (int pos = 0; pos < input.length; pos++) {
+					// 少数位置没有读音 (标点等)
+					int count = random.nextInt(8) == 0 ? 0 : random.nextInt(4) == 0 ? 2 : 1;
+					input[pos] = randomSymbols(random, count);
+				}
+
+				Set<List<Integer>> hits = new HashSet<>();
+				automaton.scan(input, (end, length, entry) ->
+						assertTrue(hits.add(List.of(end, length, entry)), "重复回调: " + end + ", " + length + ", " + entry));
+				assertEquals(enumerate(entries, input), hits, Arrays.deepToString(input));
+			}
+		}
+	}
+
+	@Test
+	void emptyAutomatonFindsNothing() {
+		List<Integer> hits = new ArrayList<>();
+		PhraseAutomaton.empty().scan(new short[][]{{1}, {2}, {}}, (end, length, entry) -> hits.add(entry));
+		assertTrue(hits.isEmpty());
+	}
+
+	/**
+	 * 逐个结束位置与词条比较：词条的每个字与输入对应位置有相同的读音
+	 */
+	private static Set<List<Integer>> enumerate(short[][][] entries, short[][] input) {
+		Set<List<Integer>> hits = new HashSet<>();
+		for (int end = 1; end <= input.length; end++) {
+			for (int entry = 0; entry < entries.length; entry++) {
+				int length = entries[entry].length;
+				if (length > end) continue;
+				boolean matched = true;
+				for (int k = 0; k < length && matched; k++) {
+					matched = intersects(entries[entry][k], input[end - length + k]);
+				}
+				if (matched) hits.add(List.of(end, length, entry));
+			}
+		}
+		return hits;
+	}
+
+	private static boolean intersects(short[] a, short[] b) {
+		for (short x : a) {
+			for (short y : b) {
+				if (x == y) return true;
+			}
+		}
+		return false;
+	}
+
+	// 不重复的符号 (已排序)
+	private static short[] randomSymbols(Random random, int count) {
+		short[] symbols = new short[count];
+		for (int i = 0; i < count; i++) {
+			short symbol;
+			do {
+				symbol = (short) random.nextInt(SYMBOLS);
+			} while (contains(symbols, i, symbol));
+			symbols[i] = symbol;
+		}
+		Arrays.sort(symbols);
+		return symbols;
+	}
+
+	private static boolean contains(short[] values, int size, short value) {
+		for (int i = 0; i < size; i++) {
+			if (values[i] == value) return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,47 @@
+package com.github.oilvegetable.pun_generator.index;
+
+import net.sourceforge.pinyin4j.PinyinHelper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 由 pinyin4j 生成字 -> 无调音节表 (src/main/resources/pinyin/char-syllables.txt)，运行时不再依赖 pinyin4j。
+ * 升级 pinyin4j 或调整读音规则后重新生成：
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.github.oilvegetable.pun_generator.index.PinyinTableGenerator
+ * </pre>
+ */
+public class PinyinTableGenerator {
+
+    public static void main(String[] args) throws IOException {
+        Path out = Paths.get(args.length > 0 ? args[0] : "src/main/resources/" + PinyinTable.RESOURCE);
+        Files.createDirectories(out.toAbsolutePath().getParent());
+        int count = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            writer.write("# 字\t无调音节 (空格分隔)，由 PinyinTableGenerator 根据 pinyin4j 生成，请勿手工修改\n");
+            for (int c = 0; c <= Character.MAX_VALUE; c++) {
+                String[] pinyins = PinyinHelper.toHanyuPinyinStringArray((char) c);
+                if (pinyins == null || pinyins.length == 0) continue;
+                // 去掉声调数字并去重
+                Set<String> syllables = new TreeSet<>();
+                for (String py : pinyins) {
+                    syllables.add(py.replaceAll("\\d", ""));
+                }
+                writer.write((char) c);
+                writer.write('\t');
+                writer.write(String.join(" ", syllables));
+                writer.write('\n');
+                count++;
+            }
+        }
+        System.out.println("已生成 " + count + " 个字: " + out);
+    }
+}
@@ -0,0 +1,145 @@
+package com.github.oilvegetable.pun_generator.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+// 计数式候选筛选与逐个词条朴素计数的结果对照
+class PostingIndexTests {
+
+	private static final int SYLLABLES = 40;
+
+	@Test
+	void collectMatchesNaiveCounting() {
+		Random random = new Random(42);
+		// 大小交替的索引共用池化的计数数组，检查扩容与清零
+		for (int itemCount : new int[]{50, 3000, 10, 800}) {
+			short[][][] items = randomItems(random, itemCount);
+			PostingIndex index = build(items);
+			for (int q = 0; q < 200; q++) {
+				List<short[]> input = randomInput(random);
+				List<int[]> unions = new ArrayList<>();
+				for (short[] syllables : input) {
+					unions.add(index.union(syllables));
+				}
+				for (int minHits = 1; minHits <= input.size(); minHits++) {
+					int[][] expected = naive(items, input, minHits);
+					assertArrayEquals(expected[0], index.collect(input, minHits));
+
+					PostingIndex.Candidates candidates = index.collectWithHits(input, minHits);
+					assertArrayEquals(expected[0], candidates.ids);
+					assertArrayEquals(expected[1], candidates.hits);
+
+					assertArrayEquals(expected[0], index.collectUnions(unions, minHits));
+					PostingIndex.Candidates unionCandidates = index.collectUnionsWithHits(unions, minHits);
+					assertArrayEquals(expected[0], unionCandidates.ids);
+					assertArrayEquals(expected[1], unionCandidates.hits);
+				}
+			}
+		}
+	}
+
+	@Test
+	void unionMatchesNaiveUnion() {
+		Random random = new Random(7);
+		short[][][] items = randomItems(random, 500);
+		PostingIndex index = build(items);
+		for (int q = 0; q < 200; q++) {
+			short[] syllables = randomReadings(random, 1 + random.nextInt(3));
+			List<Integer> expected = new ArrayList<>();
+			for (int item = 0; item < items.length; item++) {
+				if (hits(items[item], syllables)) expected.add(item);
+			}
+			assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), index.union(syllables));
+		}
+	}
+
+	/**
+	 * @return {命中位置数 >= minHits 的词条 ID (升序), 各自命中的位置数}
+	 */
+	private static int[][] naive(short[][][] items, List<short[]> input, int minHits) {
+		List<Integer> ids = new ArrayList<>();
+		List<Integer> hits = new ArrayList<>();
+		for (int item = 0; item < items.length; item++) {
+			int count = 0;
+			for (short[] syllables : input) {
+				if (hits(items[item], syllables)) count++;
+			}
+			if (count >= minHits) {
+				ids.add(item);
+				hits.add(count);
+			}
+		}
+		return new int[][]{
+				ids.stream().mapToInt(Integer::intValue).toArray(),
+				hits.stream().mapToInt(Integer::intValue).toArray()
+		};
+	}
+
+	// 词条的任意一个字的任意读音与该输入位置的任意读音相同
+	private static boolean hits(short[][] item, short[] syllables) {
+		for (short[] readings : item) {
+			for (short reading : readings) {
+				for (short syllable : syllables) {
+					if (reading == syllable) return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static PostingIndex build(short[][][] items) {
+		PostingIndex.Builder builder = new PostingIndex.Builder();
+		for (int item = 0; item < items.length; item++) {
+			builder.add(item, items[item]);
+		}
+		return builder.build(SYLLABLES);
+	}
+
+	private static short[][][] randomItems(Random random, int count) {
+		short[][][] items = new short[count][][];
+		for (int item = 0; item < count; item++) {
+			items[item] = new short[1 + random.nextInt(5)][];
+			for (int k = 0; k < items[item].length; k++) {
+				// 少数多音字
+				items[item][k] = randomReadings(random, random.nextInt(5) == 0 ? 2 : 1);
+			}
+		}
+		return items;
+	}
+
+	private static List<short[]> randomInput(Random random) {
+		List<short[]> input = new ArrayList<>();
+		int length = 1 + random.nextInt(6);
+		for (int pos = 0; pos < length; pos++) {
+			input.add(randomReadings(random, random.nextInt(4) == 0 ? 2 : 1));
+		}
+		return input;
+	}
+
+	// 不重复的读音 (已排序)
+	private static short[] randomReadings(Random random, int count) {
+		short[] readings = new short[count];
+		for (int i = 0; i < count; i++) {
+			short syllable;
+			do {
+				syllable = (short) random.nextInt(SYLLABLES);
+			} while (contains(readings, i, syllable));
+			readings[i] = syllable;
+		}
+		Arrays.sort(readings);
+		return readings;
+	}
+
+	private static boolean contains(short[] values, int size, short value) {
+		for (int i = 0; i < size; i++) {
+			if (values[i] == value) return true;
+		}
+		return false;
+	}
+}
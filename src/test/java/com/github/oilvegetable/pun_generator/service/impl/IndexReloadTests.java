@@ -0,0 +1,50 @@
+package com.github.oilvegetable.pun_generator.service.impl;
+
+import com.github.oilvegetable.pun_generator.service.SearchBudget;
+import com.github.oilvegetable.pun_generator.vo.PunResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 重新加载在后台构建新索引，期间请求继续读旧索引，完成后一次性替换
+@SpringBootTest(properties = {
+		"pun.warmup-enabled=false",
+		"pun.snapshot-path="
+})
+class IndexReloadTests {
+
+	@Autowired
+	private PunServiceImpl punService;
+
+	@Test
+	void requestsKeepServingDuringReload() throws InterruptedException {
+		List<String> types = punService.getDefaultSelectedTypes();
+		Map<String, List<PunResult>> expected = punService.generatePun("鬼斧神工", types, true, SearchBudget.unlimited());
+		PunIndex old = punService.currentIndex();
+		int memberCount = old.getItemStore().getMemberCount();
+
+		assertTrue(punService.reload());
+		long deadline = System.currentTimeMillis() + 60_000;
+		int served = 0;
+		while (punService.currentIndex() == old && System.currentTimeMillis() < deadline) {
+			assertEquals(expected, punService.generatePun("鬼斧神工", types, true, SearchBudget.unlimited()));
+			served++;
+		}
+		PunIndex current = punService.currentIndex();
+		assertNotSame(old, current);
+		assertTrue(served > 0);
+
+		// 旧索引不被修改，替换前取得它的请求读到的仍是完整的数据
+		assertEquals(memberCount, old.getItemStore().getMemberCount());
+		assertEquals(memberCount, current.getItemStore().getMemberCount());
+		assertEquals(old.getAllTypes(), current.getAllTypes());
+		assertEquals(expected, punService.generatePun("鬼斧神工", types, true, SearchBudget.unlimited()));
+	}
+}
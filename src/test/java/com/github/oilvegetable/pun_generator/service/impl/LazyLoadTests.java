@@ -0,0 +1,60 @@
+package com.github.oilvegetable.pun_generator.service.impl;
+
+import com.github.oilvegetable.pun_generator.service.SearchBudget;
+import com.github.oilvegetable.pun_generator.vo.DictStatus;
+import com.github.oilvegetable.pun_generator.vo.PunResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 按需加载：启动时只加载默认分类，其余分类在首次被请求时加载；时间预算内未加载完时返回部分结果
+@SpringBootTest(properties = {
+		"pun.warmup-enabled=false",
+		"pun.snapshot-path=",
+		"pun.lazy-load=ON_DEMAND"
+})
+class LazyLoadTests {
+
+	// 非默认分类
+	private static final String TYPE = "地名";
+
+	@Autowired
+	private PunServiceImpl punService;
+
+	@Test
+	void loadsRequestedTypeWithinBudget() {
+		assertTrue(punService.currentIndex().getLoadedTypes().containsAll(punService.getDefaultSelectedTypes()));
+		assertEquals("pending", status(TYPE).getStatus());
+
+		// 预算不足以等到加载完成：只搜索已加载的分类并标记 truncated，加载在后台继续
+		SearchBudget tight = SearchBudget.of(1, 0);
+		Map<String, List<PunResult>> partial = punService.generatePun("北京", List.of(TYPE), true, tight);
+		assertTrue(tight.isTruncated());
+		assertTrue(partial.getOrDefault(TYPE, List.of()).isEmpty());
+		assertNotEquals("pending", status(TYPE).getStatus());
+
+		// 不限时的请求等待加载完成 (SearchBudget.unlimited 不会被标记，这里用可标记的不限时预算)
+		SearchBudget unlimited = SearchBudget.of(0, 0);
+		Map<String, List<PunResult>> full = punService.generatePun("北京", List.of(TYPE), true, unlimited);
+		assertFalse(unlimited.isTruncated());
+		assertFalse(full.get(TYPE).isEmpty());
+		DictStatus ready = status(TYPE);
+		assertEquals("ready", ready.getStatus());
+		assertTrue(ready.getCount() > 0);
+	}
+
+	private DictStatus status(String type) {
+		return punService.getCategoryStatus().values().stream()
+				.flatMap(List::stream)
+				.filter(status -> status.getName().equals(type))
+				.findFirst().orElseThrow();
+	}
+}
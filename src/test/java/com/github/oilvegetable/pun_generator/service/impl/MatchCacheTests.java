@@ -0,0 +1,57 @@
+package com.github.oilvegetable.pun_generator.service.impl;
+
+import com.github.oilvegetable.pun_generator.service.SearchBudget;
+import com.github.oilvegetable.pun_generator.vo.PunResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 匹配结果缓存随索引一起替换：重新加载后旧结果不再命中，计数继续累计
+@SpringBootTest(properties = {
+		"pun.warmup-enabled=false",
+		"pun.snapshot-path="
+})
+class MatchCacheTests {
+
+	@Autowired
+	private PunServiceImpl punService;
+
+	@Test
+	void reloadDropsCachedMatches() throws InterruptedException {
+		List<String> types = punService.getDefaultSelectedTypes();
+		Map<String, List<PunResult>> first = punService.generatePun("一生一世", types, true, SearchBudget.unlimited());
+
+		// 同音的输入命中同一条缓存，结果中代入本次输入的汉字
+		long hits = punService.getCacheStats().get("hits");
+		punService.generatePun("一声一世", types, true, SearchBudget.unlimited());
+		assertEquals(hits + 1, punService.getCacheStats().get("hits"));
+
+		PunIndex old = punService.currentIndex();
+		assertTrue(punService.reload());
+		awaitSwap(old);
+
+		hits = punService.getCacheStats().get("hits");
+		long misses = punService.getCacheStats().get("misses");
+		assertEquals(first, punService.generatePun("一生一世", types, true, SearchBudget.unlimited()));
+		assertEquals(hits, punService.getCacheStats().get("hits"));
+		assertEquals(misses + 1, punService.getCacheStats().get("misses"));
+
+		punService.generatePun("一生一世", types, true, SearchBudget.unlimited());
+		assertEquals(hits + 1, punService.getCacheStats().get("hits"));
+	}
+
+	private void awaitSwap(PunIndex old) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 60_000;
+		while (punService.currentIndex() == old && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertNotSame(old, punService.currentIndex());
+	}
+}
@@ -0,0 +1,173 @@
+package com.github.oilvegetable.pun_generator.service.impl;
+
+import com.github.oilvegetable.pun_generator.index.DictItem;
+import com.github.oilvegetable.pun_generator.index.ItemStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// 不分配对象的有序 / 无序匹配与逐个起点直接求解的结果对照
+class MatchCalculationTests {
+
+	private static final int SYLLABLES = 12;
+	// 与 PunServiceImpl 中的得分一致
+	private static final int EXACT_HIT_SCORE = 10;
+	private static final int FUZZY_HIT_SCORE = 6;
+	private static final int CONTIGUOUS_BONUS = 20;
+
+	private final PunServiceImpl service = new PunServiceImpl();
+
+	@Test
+	void orderedMatchMatchesExhaustiveStarts() {
+		Random random = new Random(42);
+		ItemStore store = randomStore(random);
+		for (int q = 0; q < 300; q++) {
+			long[][][] masks = randomInput(random);
+			for (int minLimit = 1; minLimit <= masks[0].length; minLimit++) {
+				for (int entry = 0; entry < store.getEntryCount(); entry++) {
+					assertSameMatch(orderedReference(store, masks[0], masks[1], entry, minLimit),
+							service.calculateOrderedMatch(store, masks[0], masks[1], entry, minLimit));
+				}
+			}
+		}
+	}
+
+	@Test
+	void unorderedMatchMatchesDirectGreedy() {
+		Random random = new Random(7);
+		ItemStore store = randomStore(random);
+		for (int q = 0; q < 300; q++) {
+			long[][][] masks = randomInput(random);
+			for (int minLimit = 1; minLimit <= masks[0].length; minLimit++) {
+				for (int entry = 0; entry < store.getEntryCount(); entry++) {
+					assertSameMatch(unorderedReference(store, masks[0], masks[1], entry, minLimit),
+							service.calculateUnorderedMatch(store, masks[0], masks[1], entry, minLimit));
+				}
+			}
+		}
+	}
+
+	/**
+	 * 对每个起点从头贪心匹配，取匹配数最多、其次得分最高的最早起点
+	 */
+	private static PunServiceImpl.MatchResult orderedReference(ItemStore store, long[][] inputMasks, long[][] fuzzyMasks, int entry, int minLimit) {
+		PunServiceImpl.MatchResult best = null;
+		for (int i = 0; i < inputMasks.length; i++) {
+			List<Integer> indices = new ArrayList<>();
+			List<Integer> sources = new ArrayList<>();
+			int score = 0;
+			int next = 0;
+			for (int j = i; j < inputMasks.length; j++) {
+				for (int k = next; k < store.charCount(entry); k++) {
+					if (hits(store, fuzzyMasks[j], entry, k)) {
+						score += hits(store, inputMasks[j], entry, k) ? EXACT_HIT_SCORE : FUZZY_HIT_SCORE;
+						if (!indices.isEmpty() && k == indices.get(indices.size() - 1) + 1) {
+							score += CONTIGUOUS_BONUS;
+						}
+						indices.add(k);
+						sources.add(j);
+						next = k + 1;
+						break;
+					}
+				}
+			}
+			if (indices.size() >= minLimit && (best == null || indices.size() > best.matchCount
+					|| (indices.size() == best.matchCount && score > best.score))) {
+				best = new PunServiceImpl.MatchResult(entry, -1, indices.size(), score, toArray(indices), toArray(sources));
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * 每个输入字依次占用第一个未被占用且同音的字典字
+	 */
+	private static PunServiceImpl.MatchResult unorderedReference(ItemStore store, long[][] inputMasks, long[][] fuzzyMasks, int entry, int minLimit) {
+		int charCount = store.charCount(entry);
+		Integer[] sourceOf = new Integer[charCount];
+		int matchCount = 0;
+		int score = 0;
+		for (int j = 0; j < inputMasks.length; j++) {
+			for (int k = 0; k < charCount; k++) {
+				if (sourceOf[k] == null && hits(store, fuzzyMasks[j], entry, k)) {
+					sourceOf[k] = j;
+					matchCount++;
+					score += hits(store, inputMasks[j], entry, k) ? EXACT_HIT_SCORE : FUZZY_HIT_SCORE;
+					break;
+				}
+			}
+		}
+		if (matchCount < minLimit) return null;
+		List<Integer> indices = new ArrayList<>();
+		List<Integer> sources = new ArrayList<>();
+		for (int k = 0; k < charCount; k++) {
+			if (sourceOf[k] != null) {
+				indices.add(k);
+				sources.add(sourceOf[k]);
+			}
+		}
+		return new PunServiceImpl.MatchResult(entry, -1, matchCount, score, toArray(indices), toArray(sources));
+	}
+
+	private static boolean hits(ItemStore store, long[] mask, int entry, int k) {
+		for (short id : store.readings(store.charStart(entry) + k)) {
+			if ((mask[id >>> 6] & 1L << id) != 0) return true;
+		}
+		return false;
+	}
+
+	private static void assertSameMatch(PunServiceImpl.MatchResult expected, PunServiceImpl.MatchResult actual) {
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertEquals(expected.entry, actual.entry);
+		assertEquals(expected.member, actual.member);
+		assertEquals(expected.matchCount, actual.matchCount);
+		assertEquals(expected.score, actual.score);
+		assertArrayEquals(expected.indices, actual.indices);
+		assertArrayEquals(expected.sources, actual.sources);
+	}
+
+	/**
+	 * 随机词条，字数 1 ~ 40 (超过无序匹配复用数组的初始长度)，少数多音字
+	 */
+	private static ItemStore randomStore(Random random) {
+		ItemStore.Builder builder = new ItemStore.Builder();
+		for (int i = 0; i < 60; i++) {
+			int length = i % 10 == 0 ? 33 + random.nextInt(8) : 1 + random.nextInt(6);
+			short[][] pinyins = new short[length][];
+			for (int k = 0; k < length; k++) {
+				pinyins[k] = random.nextInt(5) == 0
+						? new short[]{(short) random.nextInt(SYLLABLES / 2), (short) (SYLLABLES / 2 + random.nextInt(SYLLABLES / 2))}
+						: new short[]{(short) random.nextInt(SYLLABLES)};
+			}
+			builder.add(new DictItem("词" + i + "-".repeat(length), "分类", "", 1, pinyins));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @return {精确位图, 模糊位图}；模糊位图另含一些随机音节，部分输入不使用模糊音 (两者为同一数组)
+	 */
+	private static long[][][] randomInput(Random random) {
+		int length = 1 + random.nextInt(6);
+		long[][] inputMasks = new long[length][];
+		long[][] fuzzyMasks = new long[length][];
+		for (int j = 0; j < length; j++) {
+			inputMasks[j] = new long[]{1L << random.nextInt(SYLLABLES) | (random.nextInt(4) == 0 ? 1L << random.nextInt(SYLLABLES) : 0)};
+			fuzzyMasks[j] = random.nextBoolean() ? inputMasks[j] : new long[]{inputMasks[j][0] | 1L << random.nextInt(SYLLABLES)};
+		}
+		return new long[][][]{inputMasks, fuzzyMasks};
+	}
+
+	private static int[] toArray(List<Integer> values) {
+		return values.stream().mapToInt(Integer::intValue).toArray();
+	}
+}
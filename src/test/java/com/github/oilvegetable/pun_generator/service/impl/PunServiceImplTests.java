@@ -0,0 +1,138 @@
+package com.github.oilvegetable.pun_generator.service.impl;
+
+import com.github.oilvegetable.pun_generator.config.PunProperties;
+import com.github.oilvegetable.pun_generator.service.SearchBudget;
+import com.github.oilvegetable.pun_generator.vo.PunPage;
+import com.github.oilvegetable.pun_generator.vo.PunResult;
+import com.github.oilvegetable.pun_generator.vo.TypeaheadPage;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 剪枝与增量路径同完整计算的结果对照；关闭匹配结果缓存，保证每次都走被测路径
+@SpringBootTest(properties = {
+		"pun.warmup-enabled=false",
+		"pun.snapshot-path=",
+		"pun.cache-size=0"
+})
+class PunServiceImplTests {
+
+	// 1 / 2 / 4 / 8 字的常见与生僻输入 (同 WarmupRunner)
+	private static final List<String> WORDS = List.of(
+			"是", "囧", "一世", "窘迫", "一生一世", "鬼斧神工", "一生一世只是一时", "穷困潦倒囧途窘迫");
+
+	@Autowired
+	private PunServiceImpl punService;
+
+	@Autowired
+	private PunProperties punProperties;
+
+	@Test
+	void topKMatchesFullSort() {
+		// 只用启动时已加载的分类，避免触发懒加载
+		List<String> types = punService.getDefaultSelectedTypes();
+		for (boolean ignoreOrder : new boolean[]{true, false}) {
+			for (int limit : new int[]{1, 5, 20}) {
+				Map<String, Map<String, List<PunResult>>> batch = punService.generatePunBatch(WORDS, types, ignoreOrder, limit);
+				for (String word : WORDS) {
+					Map<String, List<PunResult>> full = punService.generatePun(word, types, ignoreOrder, SearchBudget.unlimited());
+					assertEquals(firstK(full, limit), batch.get(word), word + ", ignoreOrder=" + ignoreOrder + ", limit=" + limit);
+				}
+			}
+		}
+	}
+
+	@Test
+	void pagesMatchFullSort() {
+		List<String> types = punService.getDefaultSelectedTypes();
+		int pageSize = 10;
+		for (boolean ignoreOrder : new boolean[]{true, false}) {
+			for (String word : WORDS) {
+				Map<String, List<PunResult>> full = punService.generatePun(word, types, ignoreOrder, SearchBudget.unlimited());
+				PunPage first = punService.generatePunPage(word, types, ignoreOrder, pageSize, null, SearchBudget.unlimited());
+				assertEquals(firstK(full, pageSize), first.getResults(), word + ", ignoreOrder=" + ignoreOrder);
+				for (Map.Entry<String, List<PunResult>> entry : full.entrySet()) {
+					String type = entry.getKey();
+					List<PunResult> paged = new ArrayList<>(first.getResults().get(type));
+					// 首页剪枝后总数只是下限
+					assertTrue(first.getTotals().get(type) <= entry.getValue().size(), type);
+					String cursor = first.getCursors().get(type);
+					while (cursor != null) {
+						PunPage page = punService.generatePunPage(word, types, ignoreOrder, pageSize, cursor, SearchBudget.unlimited());
+						assertEquals(entry.getValue().size(), page.getTotals().get(type), type);
+						paged.addAll(page.getResults().get(type));
+						cursor = page.getCursors().get(type);
+					}
+					assertEquals(entry.getValue(), paged, word + ", " + type + ", ignoreOrder=" + ignoreOrder);
+				}
+			}
+		}
+	}
+
+	@Test
+	void cursorSurvivesSessionExpiryAndIgnoresOtherQueries() throws InterruptedException {
+		List<String> types = punService.getDefaultSelectedTypes();
+		int pageSize = 5;
+		Map<String, List<PunResult>> full = punService.generatePun("一生", types, true, SearchBudget.unlimited());
+		String type = full.entrySet().stream()
+				.filter(entry -> entry.getValue().size() > 2 * pageSize)
+				.findFirst().orElseThrow().getKey();
+		String cursor = punService.generatePunPage("一生", types, true, pageSize, null, SearchBudget.unlimited()).getCursors().get(type);
+
+		// 会话过期后用同一游标翻页：重新计算，结果与会话仍在时相同
+		int ttl = punProperties.getPageSessionTtlSeconds();
+		punProperties.setPageSessionTtlSeconds(0);
+		try {
+			Thread.sleep(10);
+			PunPage expired = punService.generatePunPage("一生", types, true, pageSize, cursor, SearchBudget.unlimited());
+			assertEquals(full.get(type).subList(pageSize, 2 * pageSize), expired.getResults().get(type));
+			assertEquals(full.get(type).size(), expired.getTotals().get(type));
+		} finally {
+			punProperties.setPageSessionTtlSeconds(ttl);
+		}
+
+		// 游标属于其他查询：不读该会话，按本次查询从游标的位置取
+		cursor = punService.generatePunPage("一生", types, true, pageSize, null, SearchBudget.unlimited()).getCursors().get(type);
+		List<PunResult> other = punService.generatePun("鬼斧", types, true, SearchBudget.unlimited()).get(type);
+		PunPage page = punService.generatePunPage("鬼斧", types, true, pageSize, cursor, SearchBudget.unlimited());
+		assertEquals(other.subList(Math.min(pageSize, other.size()), Math.min(2 * pageSize, other.size())), page.getResults().get(type));
+		assertEquals(other.size(), page.getTotals().get(type));
+	}
+
+	@Test
+	void typeaheadMatchesColdSessionAndFullSort() {
+		List<String> types = punService.getDefaultSelectedTypes();
+		// 逐字输入、删除末尾、改写末尾、清空后重新输入
+		List<String> keystrokes = List.of("一", "一生", "一生一", "一生一世", "一生一世只", "一生一世只是", "一生一世只是一时",
+				"一生一世只是", "一生一世", "一生一是", "一生", "", "鬼", "鬼斧", "鬼斧神工");
+		for (boolean ignoreOrder : new boolean[]{true, false}) {
+			String session = null;
+			for (String word : keystrokes) {
+				TypeaheadPage page = punService.typeahead(session, word, types, ignoreOrder, 5);
+				assertEquals(session != null, page.isIncremental(), word);
+				session = page.getSession();
+
+				TypeaheadPage cold = punService.typeahead(null, word, types, ignoreOrder, 5);
+				assertEquals(cold.getResults(), page.getResults(), word + ", ignoreOrder=" + ignoreOrder);
+				if (!word.isEmpty()) {
+					assertEquals(firstK(punService.generatePun(word, types, ignoreOrder, SearchBudget.unlimited()), 5), page.getResults(),
+							word + ", ignoreOrder=" + ignoreOrder);
+				}
+			}
+		}
+	}
+
+	private static Map<String, List<PunResult>> firstK(Map<String, List<PunResult>> results, int k) {
+		Map<String, List<PunResult>> firstK = new LinkedHashMap<>();
+		results.forEach((type, list) -> firstK.put(type, list.subList(0, Math.min(k, list.size()))));
+		return firstK;
+	}
+}
@@ -0,0 +1,97 @@
+package com.github.oilvegetable.pun_generator.service.impl;
+
+import com.github.oilvegetable.pun_generator.service.PunService;
+import com.github.oilvegetable.pun_generator.service.SearchBudget;
+import com.github.oilvegetable.pun_generator.vo.PunPage;
+import com.github.oilvegetable.pun_generator.vo.PunResult;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 分片超时：分片的分类返回空结果并标记 truncated，本地分类照常返回
+@SpringBootTest(properties = {
+		"pun.warmup-enabled=false",
+		"pun.snapshot-path=",
+		"pun.shard-timeout-ms=200"
+})
+class ShardCoordinatorTests {
+
+	private static final List<String> TYPES = List.of("成语", "诗歌");
+	private static final String LOCAL_TYPE = "成语";
+	private static final String SHARD_TYPE = "诗歌";
+
+	// 接受连接但从不响应的分片
+	private static ServerSocket silentShard;
+
+	@DynamicPropertySource
+	static void shards(DynamicPropertyRegistry registry) throws IOException {
+		silentShard = new ServerSocket(0);
+		registry.add("pun.shards[0].url", () -> "http://localhost:" + silentShard.getLocalPort());
+		registry.add("pun.shards[0].dicts[0]", () -> SHARD_TYPE);
+	}
+
+	@AfterAll
+	static void closeShard() throws IOException {
+		silentShard.close();
+	}
+
+	@Autowired
+	private ShardCoordinator shardCoordinator;
+
+	@Autowired
+	private PunService punService;
+
+	@Test
+	void timedOutShardYieldsPartialResults() {
+		Map<String, List<PunResult>> local = punService.generatePun("一生一世", List.of(LOCAL_TYPE), true, SearchBudget.unlimited());
+
+		// SearchBudget.unlimited 不会被标记，这里用可标记的不限时预算
+		SearchBudget budget = SearchBudget.of(0, 0);
+		long start = System.nanoTime();
+		Map<String, List<PunResult>> results = shardCoordinator.generatePun("一生一世", TYPES, true, budget);
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5_000);
+		assertEquals(TYPES, List.copyOf(results.keySet()));
+		assertEquals(local.get(LOCAL_TYPE), results.get(LOCAL_TYPE));
+		assertTrue(results.get(SHARD_TYPE).isEmpty());
+		assertTrue(budget.isTruncated());
+	}
+
+	@Test
+	void timedOutShardYieldsPartialPage() {
+		PunPage local = punService.generatePunPage("一生一世", List.of(LOCAL_TYPE), true, 5, null, SearchBudget.unlimited());
+
+		PunPage page = shardCoordinator.generatePunPage("一生一世", TYPES, true, 5, null, SearchBudget.of(0, 0));
+		assertTrue(page.isTruncated());
+		assertEquals(local.getResults().get(LOCAL_TYPE), page.getResults().get(LOCAL_TYPE));
+		assertEquals(local.getTotals().get(LOCAL_TYPE), page.getTotals().get(LOCAL_TYPE));
+		assertTrue(page.getResults().get(SHARD_TYPE).isEmpty());
+		assertNull(page.getCursors().get(SHARD_TYPE));
+	}
+
+	@Test
+	void timedOutShardStillCompletesStream() {
+		Map<String, List<PunResult>> local = punService.generatePun("一生一世", List.of(LOCAL_TYPE), true, SearchBudget.unlimited());
+
+		Map<String, PunPage> pages = new ConcurrentHashMap<>();
+		shardCoordinator.generatePunStream("一生一世", TYPES, true, 0, SearchBudget.of(0, 0),
+				page -> page.getResults().keySet().forEach(type -> assertNull(pages.put(type, page)))).join();
+		assertEquals(TYPES.size(), pages.size());
+		assertEquals(local.get(LOCAL_TYPE), pages.get(LOCAL_TYPE).getResults().get(LOCAL_TYPE));
+		assertTrue(pages.get(SHARD_TYPE).getResults().get(SHARD_TYPE).isEmpty());
+		assertTrue(pages.get(SHARD_TYPE).isTruncated());
+	}
+}
@@ -0,0 +1,43 @@
+package com.github.oilvegetable.pun_generator.service.impl;
+
+import com.github.oilvegetable.pun_generator.config.PunProperties;
+import com.github.oilvegetable.pun_generator.index.IndexSnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+// 正常启动 (配置中有不存在的词库文件) 后写入快照，读回的词条与内存中的索引一致
+@SpringBootTest(properties = "pun.warmup-enabled=false")
+class SnapshotWriteTests {
+
+	@TempDir
+	static Path dir;
+
+	@DynamicPropertySource
+	static void snapshotPath(DynamicPropertyRegistry registry) {
+		registry.add("pun.snapshot-path", () -> dir.resolve("pun-index.snap").toString());
+	}
+
+	@Autowired
+	private PunServiceImpl punService;
+
+	@Autowired
+	private PunProperties punProperties;
+
+	@Test
+	void writesSnapshotAfterCleanBuild() throws IOException {
+		IndexSnapshot snapshot = IndexSnapshot.read(Path.of(punProperties.getSnapshotPath()), IndexSnapshot.checksum(punProperties));
+		assertNotNull(snapshot);
+		assertEquals(punService.currentIndex().getItemStore().getMemberCount(), snapshot.getItemStore().getMemberCount());
+		assertEquals(punService.currentIndex().getItemStore().getEntryCount(), snapshot.getItemStore().getEntryCount());
+	}
+}
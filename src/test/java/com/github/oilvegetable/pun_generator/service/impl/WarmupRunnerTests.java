@@ -0,0 +1,65 @@
+package com.github.oilvegetable.pun_generator.service.impl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.AvailabilityState;
+import org.springframework.boot.availability.LivenessState;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.event.EventListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 启动预热在应用启动之后、报告就绪之前执行
+@SpringBootTest(properties = {
+		"pun.warmup-enabled=true",
+		"pun.warmup-queries=一生一世",
+		"pun.warmup-min-rounds=2",
+		"pun.warmup-max-rounds=3",
+		"pun.snapshot-path="
+})
+class WarmupRunnerTests {
+
+	@Autowired
+	private ReadinessRecorder recorder;
+
+	@Autowired
+	private ApplicationAvailability availability;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Test
+	void readinessWaitsForWarmup() {
+		assertEquals(0L, recorder.warmupsAt.get(LivenessState.CORRECT));
+		assertEquals(1L, recorder.warmupsAt.get(ReadinessState.ACCEPTING_TRAFFIC));
+		assertEquals(ReadinessState.ACCEPTING_TRAFFIC, availability.getReadinessState());
+		double rounds = registry.get("pun.warmup.rounds").gauge().value();
+		assertTrue(rounds >= 2 && rounds <= 3, String.valueOf(rounds));
+	}
+
+	/**
+	 * 记录每次可用性变化时已完成的预热次数
+	 */
+	@TestConfiguration
+	static class ReadinessRecorder {
+
+		final Map<AvailabilityState, Long> warmupsAt = new ConcurrentHashMap<>();
+
+		@Autowired
+		private MeterRegistry registry;
+
+		@EventListener
+		void onAvailabilityChange(AvailabilityChangeEvent<?> event) {
+			warmupsAt.put(event.getState(), registry.get("pun.warmup").timer().count());
+		}
+	}
+}